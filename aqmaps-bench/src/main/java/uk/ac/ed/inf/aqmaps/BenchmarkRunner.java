@@ -0,0 +1,31 @@
+package uk.ac.ed.inf.aqmaps;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Main class of benchmarks.jar: the usual JMH command line, with the GC profiler (allocation rate and bytes per operation,
+ * collection counts and times) always on and the results saved as jmh-result.json for comparing runs
+ * -h and -l go straight to JMH
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		var commandLine = new CommandLineOptions(args);
+		if(commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams() || commandLine.shouldListProfilers()) {
+			Main.main(args);
+			return;
+		}
+		var options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result.json")
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,68 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * Instruction, made once for every move of a flight (its constructor works out the angle) and printed once into the flightpath file
+ * Moves are in all 36 directions from points over the containment area
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InstructionBenchmark {
+
+	final static int moves = 1024;
+
+	@Param({"1"})
+	long seed;
+
+	private final Point[] from = new Point[moves];
+	private final Point[] to = new Point[moves];
+	private final Instruction[] instructions = new Instruction[moves];
+	private int next;
+
+	@Setup
+	public void setup() {
+		var random = new SplittableRandom(seed);
+		for(int i = 0; i < moves; i++) {
+			double x = FileManager.minLon + random.nextDouble() * (FileManager.maxLon - FileManager.minLon);
+			double y = FileManager.minLat + random.nextDouble() * (FileManager.maxLat - FileManager.minLat);
+			double angle = Math.toRadians(10 * random.nextInt(36));
+			from[i] = Point.fromLngLat(x, y);
+			to[i] = Point.fromLngLat(x + .0003 * Math.cos(angle), y + .0003 * Math.sin(angle));
+			instructions[i] = new Instruction(from[i], to[i], i % 10 == 0 ? "sensor." + i + ".bench" : null);
+		}
+	}
+
+	@Benchmark
+	public Instruction angle() {
+		int i = next;
+		next = (next + 1) % moves;
+		return new Instruction(from[i], to[i], null);
+	}
+
+	@Benchmark
+	public String format() {
+		int i = next;
+		next = (next + 1) % moves;
+		return instructions[i].toString();
+	}
+}
@@ -0,0 +1,88 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The collision test of one A* expansion, the 36 moves from a point checked against the building edges
+ * expansion checks each move with EdgeIndex.isValidMove, which took over from Path.pointIsValid
+ * batch checks all 36 at once with EdgeIndex.validMoves, which is what the lattice searches call
+ * Origins are the sensor positions, taken in turn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoveValidityBenchmark {
+
+	@Param({SyntheticMap.synthetic})
+	String geometry;
+
+	@Param({"33", "1000", "10000"})
+	int sensors;
+
+	@Param({"1"})
+	long seed;
+
+	private EdgeIndex edges;
+	private double[] x; //origins
+	private double[] y;
+	private final double[] moveX = new double[36]; //one move in each of the 36 directions
+	private final double[] moveY = new double[36];
+	private final double[] toX = new double[36]; //ends of the moves from the current origin
+	private final double[] toY = new double[36];
+	private int origin;
+
+	@Setup
+	public void setup() throws IOException {
+		var buildings = SyntheticMap.buildings(geometry, seed);
+		edges = new EdgeIndex(buildings);
+		var nodes = SyntheticMap.sensors(sensors, buildings, seed);
+		x = new double[nodes.size()];
+		y = new double[nodes.size()];
+		for(int i = 0; i < x.length; i++) {
+			x[i] = nodes.get(i).getLng();
+			y[i] = nodes.get(i).getLat();
+		}
+		for(int d = 0; d < 36; d++) {
+			moveX[d] = .0003 * Math.cos(Math.toRadians(d * 10));
+			moveY[d] = .0003 * Math.sin(Math.toRadians(d * 10));
+		}
+	}
+
+	@Benchmark
+	public int expansion() {
+		int i = origin;
+		origin = (origin + 1) % x.length;
+		int valid = 0;
+		for(int d = 0; d < 36; d++) {
+			if(edges.isValidMove(x[i], y[i], x[i] + moveX[d], y[i] + moveY[d])) valid++;
+		}
+		return valid;
+	}
+
+	@Benchmark
+	public long batch() {
+		int i = origin;
+		origin = (origin + 1) % x.length;
+		for(int d = 0; d < 36; d++) {
+			toX[d] = x[i] + moveX[d];
+			toY[d] = y[i] + moveY[d];
+		}
+		return edges.validMoves(x[i], y[i], toX, toY, (1L << 36) - 1);
+	}
+}
@@ -0,0 +1,72 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * A* over one leg, Path construction as App does it: the legs of a greedy tour of the sensors, planned one after another
+ * More sensors make the legs shorter, so the sizes show how the search cost grows with leg length
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class PathBenchmark {
+
+	@Param({SyntheticMap.synthetic})
+	String geometry;
+
+	@Param({"33", "1000", "10000"})
+	int sensors;
+
+	@Param({"1"})
+	long seed;
+
+	private PathContext context;
+	private Point[] points; //the sensors in tour order, start first
+	private String[] words;
+	private int leg;
+
+	@Setup
+	public void setup() throws IOException {
+		System.setOut(new PrintStream(OutputStream.nullOutputStream())); //Path prints a line a leg, which would be most of the time measured
+
+		var buildings = SyntheticMap.buildings(geometry, seed);
+		context = new PathContext(new EdgeIndex(buildings), null);
+		var nodes = SyntheticMap.sensors(sensors, buildings, seed);
+		var finder = RouteFinder.sparse(nodes);
+		finder.greedyTour();
+		points = new Point[nodes.size()];
+		words = new String[nodes.size()];
+		for(int i = 0; i < points.length; i++) {
+			var node = nodes.get(finder.getOrder().get(i));
+			points[i] = Point.fromLngLat(node.getLng(), node.getLat());
+			words[i] = node.getLocation();
+		}
+	}
+
+	@Benchmark
+	public Path leg() {
+		int from = leg, to = (leg + 1) % points.length;
+		leg = to;
+		return new Path(points[from], points[to], words[to], context);
+	}
+}
@@ -0,0 +1,103 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The visiting order heuristics App runs by default: cheapest insertion from the list order, then 2-opt and swap from the inserted order
+ * Each call starts from the same order again, the distance table is built once per size
+ * These need the full distance table, 3000 sensors already take 72MB of it, SparseTourBenchmark covers 10k sensors and more
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class RouteFinderBenchmark {
+
+	/*
+	 * The sensors, their distance table and the two orders the heuristics start from
+	 */
+	@State(Scope.Benchmark)
+	public static class Tour {
+		@Param({SyntheticMap.synthetic})
+		String geometry;
+
+		@Param({"33", "300", "3000"})
+		int sensors;
+
+		@Param({"1"})
+		long seed;
+
+		ArrayList<SensorNode> nodes;
+		double[][] distances;
+		ArrayList<Integer> listOrder;
+		ArrayList<Integer> insertedOrder;
+
+		@Setup
+		public void setup() throws IOException {
+			nodes = SyntheticMap.sensors(sensors, SyntheticMap.buildings(geometry, seed), seed);
+			var finder = new RouteFinder(nodes);
+			distances = finder.distances;
+			listOrder = new ArrayList<Integer>(finder.getOrder());
+			finder.tspInsertion();
+			insertedOrder = new ArrayList<Integer>(finder.getOrder());
+		}
+	}
+
+	//a RouteFinder in the list order before each call
+	@State(Scope.Thread)
+	public static class Unordered {
+		RouteFinder finder;
+
+		@Setup(Level.Invocation)
+		public void reset(Tour tour) {
+			if(finder == null) finder = new RouteFinder(tour.nodes, tour.distances);
+			finder.order = new ArrayList<Integer>(tour.listOrder);
+		}
+	}
+
+	//a RouteFinder in the cheapest insertion order before each call
+	@State(Scope.Thread)
+	public static class Inserted {
+		RouteFinder finder;
+
+		@Setup(Level.Invocation)
+		public void reset(Tour tour) {
+			if(finder == null) finder = new RouteFinder(tour.nodes, tour.distances);
+			finder.order = new ArrayList<Integer>(tour.insertedOrder);
+		}
+	}
+
+	@Benchmark
+	public ArrayList<Integer> tspInsertion(Unordered state) {
+		state.finder.tspInsertion();
+		return state.finder.getOrder();
+	}
+
+	@Benchmark
+	public ArrayList<Integer> twoOptHeuristic(Inserted state) {
+		state.finder.twoOptHeuristic();
+		return state.finder.getOrder();
+	}
+
+	@Benchmark
+	public ArrayList<Integer> swapHeuristic(Inserted state) {
+		state.finder.swapHeuristic();
+		return state.finder.getOrder();
+	}
+}
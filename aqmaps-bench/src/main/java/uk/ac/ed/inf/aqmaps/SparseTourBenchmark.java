@@ -0,0 +1,54 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The whole --sparse ordering, RouteFinder.sparse with its KdTree, the greedy edge tour, then the neighbor list local search,
+ * for the sensor counts the distance table does not fit
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SparseTourBenchmark {
+
+	@Param({SyntheticMap.synthetic})
+	String geometry;
+
+	@Param({"1000", "10000"})
+	int sensors;
+
+	@Param({"1"})
+	long seed;
+
+	private ArrayList<SensorNode> nodes;
+
+	@Setup
+	public void setup() throws IOException {
+		nodes = SyntheticMap.sensors(sensors, SyntheticMap.buildings(geometry, seed), seed);
+	}
+
+	@Benchmark
+	public ArrayList<Integer> greedyAndLocalSearch() {
+		var finder = RouteFinder.sparse(nodes);
+		finder.greedyTour();
+		finder.localSearch();
+		return finder.getOrder();
+	}
+}
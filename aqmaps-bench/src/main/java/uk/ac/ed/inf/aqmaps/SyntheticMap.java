@@ -0,0 +1,88 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/*
+ * Buildings and sensors for the benchmarks, the same for every run with the same seed
+ * Synthetic buildings are star shaped polygons, 5 to 10 sided, scattered over the drone containment area without overlapping,
+ * or the real ones can be read from a no-fly-zones GeoJSON file saved from the web server
+ * Sensors are scattered over the free space, at least one move length from the edge of the containment area
+ */
+final class SyntheticMap {
+
+	final static String synthetic = "synthetic";
+	final static int syntheticBuildings = 40;
+
+	private SyntheticMap() {
+	}
+
+	/*
+	 * takes "synthetic" or the name of a no-fly-zones GeoJSON file, and the seed of the synthetic buildings
+	 * returns the buildings and, last, the containment area, as App reads them
+	 */
+	static NoFlyZones buildings(String geometry, long seed) throws IOException {
+		if(!geometry.equals(synthetic)) return NoFlyZones.parse(Files.readAllBytes(Paths.get(geometry)));
+
+		var random = new SplittableRandom(seed);
+		var buildings = new ArrayList<double[][]>();
+		var boxes = new ArrayList<double[]>(); //minX, minY, maxX, maxY of each building, kept a move length apart
+		for(int tries = 0; buildings.size() < syntheticBuildings && tries < 100 * syntheticBuildings; tries++) {
+			double centerX = FileManager.minLon + .001 + random.nextDouble() * (FileManager.maxLon - FileManager.minLon - .002);
+			double centerY = FileManager.minLat + .0006 + random.nextDouble() * (FileManager.maxLat - FileManager.minLat - .0012);
+			int sides = 5 + random.nextInt(6);
+			var ring = new double[sides + 1][];
+			var box = new double[] {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+			for(int v = 0; v < sides; v++) {
+				double angle = 2 * Math.PI * v / sides + random.nextDouble() * .3, radius = .0001 + random.nextDouble() * .0003;
+				ring[v] = new double[] {centerX + radius * Math.cos(angle) * 1.7, centerY + radius * Math.sin(angle)};
+				box[0] = Math.min(box[0], ring[v][0]);
+				box[1] = Math.min(box[1], ring[v][1]);
+				box[2] = Math.max(box[2], ring[v][0]);
+				box[3] = Math.max(box[3], ring[v][1]);
+			}
+			ring[sides] = ring[0];
+			if(overlaps(box, boxes)) continue;
+			boxes.add(box);
+			buildings.add(ring);
+		}
+		buildings.add(new double[][] {
+			{FileManager.minLon, FileManager.minLat}, {FileManager.maxLon, FileManager.minLat}, {FileManager.maxLon, FileManager.maxLat},
+			{FileManager.minLon, FileManager.maxLat}, {FileManager.minLon, FileManager.minLat}});
+		return NoFlyZones.of(buildings);
+	}
+
+	/*
+	 * returns a start node followed by count sensors, all outside every building
+	 */
+	static ArrayList<SensorNode> sensors(int count, NoFlyZones buildings, long seed) {
+		var random = new SplittableRandom(seed);
+		var nodes = new ArrayList<SensorNode>();
+		while(nodes.size() <= count) {
+			double x = FileManager.minLon + .0003 + random.nextDouble() * (FileManager.maxLon - FileManager.minLon - .0006);
+			double y = FileManager.minLat + .0003 + random.nextDouble() * (FileManager.maxLat - FileManager.minLat - .0006);
+			if(inside(x, y, buildings)) continue;
+			var words = nodes.isEmpty() ? null : "sensor." + nodes.size() + ".bench";
+			nodes.add(new SensorNode(words, 50, "100.0", "#ffffff", "cross", x, y));
+		}
+		return nodes;
+	}
+
+	private static boolean overlaps(double[] box, ArrayList<double[]> boxes) {
+		for(double[] other : boxes) {
+			if(box[0] < other[2] + .0003 && other[0] < box[2] + .0003 && box[1] < other[3] + .0003 && other[1] < box[3] + .0003) return true;
+		}
+		return false;
+	}
+
+	//whether the point is inside a building, the containment area (the last polygon) does not count
+	private static boolean inside(double x, double y, NoFlyZones buildings) {
+		for(int b = 0; b < buildings.getPolygonCount() - 1; b++) {
+			if(buildings.inside(b, x, y)) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,185 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * Anytime repairing A* (ARA*) over a LatticeGraph
+ * The first pass uses the same 2x weight on the heuristic as LatticeSearch, so a path is found about as quickly,
+ * then the weight is lowered pass by pass, each pass reusing the nodes and scores of the one before, until the weight reaches 1
+ * (the shortest path on the lattice) or the leg's deadline passes, and the shortest path found so far is kept
+ * The heuristic is the distance to the edge of the .0002 goal disc, which never overestimates, so each pass's path
+ * is at most weight times longer than the shortest
+ * One workspace per thread, like LatticeSearch
+ */
+final class AnytimeSearch {
+
+	private final static ThreadLocal<AnytimeSearch> workspaces = ThreadLocal.withInitial(AnytimeSearch::new);
+
+	final static double reach = .0002; //the leg ends within this distance of the sensor
+	final static double startWeight = 2.; //same inflation as LatticeSearch for the first path
+	final static double weightStep = .25; //lowered by this much after each pass
+	final static int checkInterval = 256; //expansions between looks at the clock
+
+	/*
+	 * returns the search workspace of the calling thread
+	 */
+	static AnytimeSearch get() {
+		return workspaces.get();
+	}
+
+	private final LatticeGraph graph = new LatticeGraph();
+	private final IndexedHeap openSet = new IndexedHeap(1024); //keyed by gScore plus weight times the estimated distance left
+	private int[] inconsistent = new int[1024]; //nodes improved after being closed in this pass
+	private int inconsistentCount;
+	private int closedCount;
+	private int passes;
+	private double weight;
+
+	private double endLng;
+	private double endLat;
+	private int bestGoal; //cheapest node found inside the goal disc, -1 if none yet
+
+	private AnytimeSearch() {
+	}
+
+	//sizes of the sets at the end of the last search, reported by Path
+	int getOpenCount() {
+		return openSet.size();
+	}
+
+	int getClosedCount() {
+		return closedCount;
+	}
+
+	int getNodeCount() {
+		return graph.nodeCount;
+	}
+
+	//passes finished in the last search, and the weight of the last one
+	int getPasses() {
+		return passes;
+	}
+
+	double getWeight() {
+		return weight;
+	}
+
+	/*
+	 * Finds a path from start to a point within .0002 of end, improving it until the deadline (a System.nanoTime() value)
+	 * the search does not stop before it has a path, however long that takes
+	 * returns the points visited, start first, or null if no path exists
+	 */
+	ArrayList<Point> search(Point start, Point end, PathContext context, long deadline) {
+		openSet.clear();
+		inconsistentCount = 0;
+		closedCount = 0;
+		passes = 0;
+		bestGoal = -1;
+		endLng = end.longitude();
+		endLat = end.latitude();
+		weight = startWeight;
+
+		var g = graph;
+		int startNode = g.reset(start, context);
+		g.gScore[startNode] = 0.;
+		g.state[startNode] = LatticeGraph.open;
+		openSet.add(startNode, weight * heuristic(g.lng[startNode], g.lat[startNode]));
+
+		while(true) {
+			if(!improvePath(deadline)) break; //ran out of time, keeps the shortest path found so far
+			passes++;
+			if(bestGoal < 0 || weight <= 1. || System.nanoTime() >= deadline) break;
+
+			weight = Math.max(1., weight - weightStep);
+			startPass();
+		}
+		return bestGoal < 0 ? null : g.pathTo(bestGoal);
+	}
+
+	/*
+	 * One ARA* pass: expands nodes until none left could lead to a shorter path than the best goal at the current weight
+	 * returns false if the deadline passed first, which is only checked once there is a path to fall back on
+	 */
+	private boolean improvePath(long deadline) {
+		var g = graph;
+		int expansions = 0;
+		while(!openSet.isEmpty() && (bestGoal < 0 || openSet.peekKey() < g.gScore[bestGoal])) {
+			if(++expansions % checkInterval == 0 && bestGoal >= 0 && System.nanoTime() >= deadline) return false;
+
+			int current = openSet.poll();
+			g.state[current] = LatticeGraph.closed;
+			closedCount++;
+
+			g.generateNeighbors(current);
+			long valid = g.validMoves(current); //which moves avoid the buildings
+
+			for(int dir = 0; dir < LatticeGraph.directions; dir++) {
+				int neighbor = g.neighbors[dir];
+				if(neighbor < 0 || (valid & (1L << dir)) == 0) continue;
+
+				var tentativeGScore = g.gScore[current] + LatticeGraph.moveLength;
+				if(tentativeGScore >= g.gScore[neighbor]) continue;
+				g.cameFrom[neighbor] = current;
+				g.gScore[neighbor] = tentativeGScore;
+
+				var distance = getEuclid(g.lng[neighbor], g.lat[neighbor]);
+				if(distance < reach && (bestGoal < 0 || tentativeGScore < g.gScore[bestGoal])) bestGoal = neighbor;
+
+				switch(g.state[neighbor]) {
+				case LatticeGraph.open:
+					openSet.update(neighbor, fScore(neighbor));
+					break;
+				case LatticeGraph.unseen:
+					g.state[neighbor] = LatticeGraph.open;
+					openSet.add(neighbor, fScore(neighbor));
+					break;
+				case LatticeGraph.closed: //already expanded this pass, its new score is passed on in the next one
+					g.state[neighbor] = LatticeGraph.inconsistent;
+					if(inconsistentCount == inconsistent.length) inconsistent = Arrays.copyOf(inconsistent, inconsistentCount * 2);
+					inconsistent[inconsistentCount++] = neighbor;
+					break;
+				default: //already inconsistent
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Gets the open set ready for a pass at the new weight: inconsistent nodes are opened again,
+	 * every open node is rekeyed, and closed nodes may be expanded again
+	 */
+	private void startPass() {
+		var g = graph;
+		openSet.clear();
+		for(int i = 0; i < inconsistentCount; i++) g.state[inconsistent[i]] = LatticeGraph.open;
+		inconsistentCount = 0;
+		for(int node = 0; node < g.nodeCount; node++) {
+			if(g.state[node] == LatticeGraph.open) openSet.add(node, fScore(node));
+			else if(g.state[node] == LatticeGraph.closed) g.state[node] = LatticeGraph.unseen; //opened again if a shorter path reaches it
+		}
+	}
+
+	private double fScore(int node) {
+		return graph.gScore[node] + weight * heuristic(graph.lng[node], graph.lat[node]);
+	}
+
+	/*
+	 * Lower bound on the distance left, from a point to the edge of the goal disc
+	 */
+	private double heuristic(double pointLng, double pointLat) {
+		return Math.max(0., getEuclid(pointLng, pointLat) - reach);
+	}
+
+	/*
+	 * Euclidean distance from a point to the end of the search
+	 */
+	private double getEuclid(double pointLng, double pointLat) {
+		var latDif = (pointLat - endLat);
+		var longDif = (pointLng - endLng);
+		return Math.sqrt((latDif*latDif) + (longDif*longDif));
+	}
+}
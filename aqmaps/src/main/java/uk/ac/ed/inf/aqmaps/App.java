@@ -1,157 +1,314 @@
-package uk.ac.ed.inf.aqmaps;
-import java.net.http.*;
-import java.net.http.HttpResponse.BodyHandlers;
-import java.util.*;
-
-import com.mapbox.geojson.*;
-
-import com.google.gson.*;
-import com.google.gson.reflect.*;
-
-import java.io.FileWriter;
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.net.URI;
-
-public class App 
-{
-	//edges of the drone containment area
-
-	final static int maxMoves = 150;
-	
-    public static void main( String[] args )
-    {
-    	final String day = args[0]; //DD
-    	final String month = args[1]; //MM
-    	final String year = args[2]; //YYYY
-    	final double startLat = Double.parseDouble(args[3]);  //Drone start position
-    	final double startLng = Double.parseDouble(args[4]);
-    	final int seed = Integer.parseInt(args[5]); //seed for randomness (unused)
-    	final String port = args[6]; //Server port, usually 80
-    	
-    	var sensorNodeList = FileManager.getSensorList(day,month,year,port); //gets list of SensorNode objects and gets their coordinates from the WebServer
-    	sensorNodeList.add(0, new SensorNode(null, 0, null, "#ffffff", "cross", startLng, startLat)); //adds the starting position, marked by a white x, should be removed before it is displayed
-   	
-    	var buildingFeatures = FileManager.getBuildingFeatures(port); //reads the buildings from WebServer into a feature list and adds the drone containment area
-    	
-    	var buildingCoordinates = new ArrayList<double[][]>(); //ArrayList of all the vertices sets of the buildings
-    	
-    	for(Feature feat : buildingFeatures) {
-    		buildingCoordinates.add(new Gson().fromJson(feat.toJson(), Geometry.class).geometry.coordinates[0]); //adds the double[][] vertices coordinates from each building feature
-    	}
-    	
-    	var fullPath = getFullPath(sensorNodeList, buildingCoordinates); //Gets the List of Path objects each holding a list of Instruction objects with the drones moves between nodes
-    	
-    	var pointList = new ArrayList<Point>(); //List of points for a json file in order to display the moves
-    	
-    	int counter = 1; //which number instruction in flightpath file
-    	
-    	String concat = ""; //String to be saved into flightpath file
-    	
-    	pointList.add(Point.fromLngLat(startLng, startLat)); //adds starting point
-    	var visitedSensorLocations = new HashSet<String>();
-    	
-    	for(Path path : fullPath) { //for each Path (moves to get from one SensorNode to another) in fullPath
-    		
-    		for(Instruction inst : path.getInstructions()) { //for each of the individual instructions in the path
-    			pointList.add(inst.getPostMove()); //adds end of each move to pointList
-    			
-    			concat = concat + counter + "," + inst.toString() + "\n"; //adds the instruction to the string with the number instruction it is
-    			
-    			if(inst.getSensorLocation() != null) {
-    				visitedSensorLocations.add(inst.getSensorLocation());
-    			}
-    				
-    			
-    			if(counter > maxMoves) { //breaks early if out of moves
-    				System.out.println("Out of Moves");
-    				break;
-    			}
-    			counter++;
-    		}
-    		if(counter > maxMoves) break; //breaks early if out of moves
-    	}
-    	
-    	FileManager.saveFile(concat,"flightpath-" + day + "-" + month + "-" + year + ".txt"); //saves the prepared string as flightpath-DD-MM-YYYY.txt
-    	
-    	sensorNodeList.remove(0); //removes the start point from sensorNodeList
-    	
-    	for(SensorNode node : sensorNodeList) { //marks all nodes not visited so they will not show readings
-    		if(!visitedSensorLocations.contains(node.getLocation())) node.setToUnvisited();
-    	}
-    	
-    	var features = getPointFeatures(sensorNodeList); //gets all the points from SensorNodeList
-    	features.add(Feature.fromGeometry(LineString.fromLngLats(pointList))); 
-    	var jsonStr = FeatureCollection.fromFeatures(features).toJson(); //converts the FeatureCollection to a Json String
-    	FileManager.saveFile(jsonStr,"readings-" + day + "-" + month + "-" + year + ".geojson"); //saves the Json String as readings-DD-MM-YYYY.geojson
-    	
-    	System.out.println("Done in " + (counter - 1) + " moves");
-    	
-    }
-    
-    class Geometry { //class for parsing building geometry jsons using Gson
-        GeometryData geometry; //holds coordinates
-    }   
-    class GeometryData { //class for parsing building geometry jsons using Gson
-        String type; //unused
-        double[][][] coordinates; //List of building vertices in coordinates[0]
-    }
-   
-    /*
-     * Takes in the list of SensorNodes and the list of buildings
-     * outputs a list of Path objects that visits every node and returns to the start point
-     */
-    private static ArrayList<Path> getFullPath(ArrayList<SensorNode> sensorNodeList, ArrayList<double[][]> buildingCoordinates) {
-    	
-    	var finder = new RouteFinder(sensorNodeList); //creates a RouteFinder object, which takes the list of SensorNodes and decides what order to visit them in
-    	finder.tspInsertion(); //runs an insertion algorithm to choose the order
-    	finder.twoOptHeuristic();
-    	finder.swapHeuristic();
-    	finder.setStartNodeFirst();
-    	var optOrder = finder.getOrder();
-    	
-    	var fullPath = new ArrayList<Path>();
-    	
-    	var index = optOrder.get(0); //index of first node
-    	var index2 = optOrder.get(1); //index of second node
-    	var startPoint = Point.fromLngLat(sensorNodeList.get(index).getLng(), sensorNodeList.get(index).getLat()); //first node coordinates
-    	var aimedEndPoint = Point.fromLngLat(sensorNodeList.get(index2).getLng(), sensorNodeList.get(index2).getLat()); //second node coordinates
-    	fullPath.add(new Path(startPoint, aimedEndPoint, sensorNodeList.get(index2).getLocation(), buildingCoordinates)); //generates a path between those coordinates
-    	
-    	for(int i = 1; i < optOrder.size(); i++) {
-    		
-    		index = optOrder.get((i + 1) % optOrder.size()); //gets the index of the next node
-    		
-        	startPoint = fullPath.get(i - 1).getActualEndPoint(); //uses the endpoint of the last path as the start point of the new one
-        	aimedEndPoint = Point.fromLngLat(sensorNodeList.get(index).getLng(), sensorNodeList.get(index).getLat());  //gets next node location to aim for
-        	
-    		fullPath.add(new Path(startPoint, aimedEndPoint, sensorNodeList.get(index).getLocation(), buildingCoordinates)); //generates Path between the two points and adds it to the list
-    	}
-    	   	
-    	return fullPath; //return list of Paths
-    }
-    
-    /*
-     * Takes in list of SensorNode objects
-     * returns all Point features from the SensorNode objects, built according to the information in them
-     */
-    private static List<Feature> getPointFeatures(List<SensorNode> sensorNodeList) { 
-    	var features = new ArrayList<Feature>();
-    	
-    	for(SensorNode node : sensorNodeList) {
-    		Feature feature; //creates Feature
-    		
-    		var point = Point.fromLngLat(node.getLng(), node.getLat()); //gets point from node
-    		feature = Feature.fromGeometry(point); //turns point into geometry
-    		
-    		if(node.getSymbol() != "no symbol") feature.addStringProperty("marker-symbol", node.getSymbol());//adds symbol
-    		feature.addStringProperty("rgb-string", node.getColor());//adds color
-    		feature.addStringProperty("marker-color", node.getColor());//adds color again
-    		
-    		features.add(feature);//adds feature to list
-    	}
-    	return features;//returns list of features
-    }
-    
-    
-}
+package uk.ac.ed.inf.aqmaps;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.mapbox.geojson.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public class App 
+{
+	//edges of the drone containment area
+
+	final static int maxMoves = 150;
+	
+    public static void main( String[] args ) throws IOException
+    {
+    	final long runStart = System.nanoTime(); //the run budget of --search=anytime counts from here
+    	final String day = args[0]; //DD
+    	final String month = args[1]; //MM
+    	final String year = args[2]; //YYYY
+    	final double startLat = Double.parseDouble(args[3]);  //Drone start position
+    	final double startLng = Double.parseDouble(args[4]);
+    	final int seed = Integer.parseInt(args[5]); //seed for randomness, used by the multi-start search over the visiting order
+    	final String port = args[6]; //Server port, usually 80
+    	final var options = Options.parse(args, 7); //optional --flags after the positional arguments
+    	Metrics.configure(options);
+    	
+    	ArrayList<SensorNode> sensorNodeList;
+    	long fetchStart = Metrics.start();
+    	try(var wordsCache = options.wordsCache == null ? null : new WordsCache(options.wordsCache)) { //locations fetched on earlier runs, so only new sites go to the server
+    		sensorNodeList = FileManager.getSensorList(day,month,year,port,options.fetchConcurrency,wordsCache); //gets list of SensorNode objects and gets their coordinates from the WebServer
+    		if(wordsCache != null) System.out.println(wordsCache.summary());
+    	}
+    	Metrics.stop(Metrics.Phase.fetch, fetchStart);
+    	
+    	long geometryStart = Metrics.start();
+    	var zones = NoFlyZones.load(port, options.zonesCache); //the buildings, and the drone containment area last
+    	var edgeIndex = new EdgeIndex(zones); //grid of building edges, built once and shared by every Path
+    	Metrics.stop(Metrics.Phase.geometry, geometryStart);
+    	
+    	planDay(day, month, year, sensorNodeList, startNodes(startLat, startLng, options.drones), zones, edgeIndex, seed, runStart, options, ".");
+    	Metrics.finish(options, System.nanoTime() - runStart); //phase times and counters with --metrics, the JSON report with --report
+    }
+    
+    /*
+     * Takes the positional start position and the {lat, lng} of every other drone
+     * returns the start node of each drone, marked by a white x, never displayed
+     */
+    static ArrayList<SensorNode> startNodes(double startLat, double startLng, List<double[]> drones) {
+    	var starts = new ArrayList<SensorNode>();
+    	starts.add(new SensorNode(null, 0, null, "#ffffff", "cross", startLng, startLat));
+    	for(double[] drone : drones) starts.add(new SensorNode(null, 0, null, "#ffffff", "cross", drone[1], drone[0]));
+    	return starts;
+    }
+    
+    /*
+     * Plans one day's flights and saves its flightpath and readings files
+     * takes the date, its sensors, the start node of each drone, the buildings and their edges (which every day of a batch shares),
+     * the seed, the time planning the day started, the command line options and the directory to save the files in
+     * returns the moves flown by all the drones together
+     * throws IOException if a file cannot be written
+     */
+    static int planDay(String day, String month, String year, ArrayList<SensorNode> sensorNodeList, ArrayList<SensorNode> starts,
+    		NoFlyZones zones, EdgeIndex edgeIndex, int seed, long runStart, Options options, String directory) throws IOException {
+    	
+    	var costFields = costFields(sensorNodeList, starts, zones, edgeIndex, options);
+    	var plans = planFleet(sensorNodeList, starts, zones, edgeIndex, costFields, seed, runStart, options);
+    	return saveDay(day, month, year, sensorNodeList, plans, directory);
+    }
+    
+    /*
+     * Takes the sensors, the start node of each drone, the buildings and their edges and the command line options
+     * returns the distances around the buildings to every sensor and start point, for the A* heuristic, or null without --cost-fields
+     */
+    static CostFields costFields(ArrayList<SensorNode> sensorNodeList, ArrayList<SensorNode> starts, NoFlyZones zones, EdgeIndex edgeIndex, Options options) {
+    	if(!options.costFields) return null;
+    	var targets = new ArrayList<SensorNode>(starts); //every point a leg can aim for, the start points first
+    	targets.addAll(sensorNodeList);
+    	return new CostFields(edgeIndex, zones, sensorPoints(targets));
+    }
+    
+    /*
+     * Shares the sensors out between the drones and plans each drone's flight on its own worker
+     * takes the sensors, the start node of each drone, the buildings, their edges and cost fields, the seed, the time planning started and the command line options
+     * returns the Plan of each drone, in the order of starts
+     */
+    static ArrayList<Replanner.Plan> planFleet(ArrayList<SensorNode> sensorNodeList, ArrayList<SensorNode> starts, NoFlyZones zones, EdgeIndex edgeIndex,
+    		CostFields costFields, int seed, long runStart, Options options) {
+    	var fleet = FleetPlanner.partition(sensorNodeList, starts); //one list per drone, its start node first, all of them in one list with a single drone
+    	return IntStream.range(0, fleet.size()).parallel() //each drone is planned on its own worker
+    			.mapToObj(k -> planDrone(fleet.get(k), zones, edgeIndex, costFields, seed + k, runStart, options))
+    			.collect(Collectors.toCollection(ArrayList::new));
+    }
+    
+    /*
+     * Saves the flightpath file of each drone's Plan and the day's readings file, marking the sensors no drone reached as not visited
+     * takes the date, its sensors, the Plans and the directory to save the files in
+     * returns the moves flown by all the drones together
+     * throws IOException if a file cannot be written
+     */
+    static int saveDay(String day, String month, String year, List<SensorNode> sensorNodeList, List<Replanner.Plan> plans, String directory) throws IOException {
+    	int total = 0;
+    	var flown = new int[plans.size()]; //moves each drone saved, its line in the readings file has one point more
+    	var visitedSensorLocations = new HashSet<String>();
+    	for(int k = 0; k < plans.size(); k++) {
+    		var fileName = Paths.get(directory, "flightpath-" + day + "-" + month + "-" + year + (plans.size() > 1 ? "-drone" + (k + 1) : "") + ".txt").toString();
+    		int moves = saveFlight(plans.get(k).legs, fileName, visitedSensorLocations); //saves the moves as flightpath-DD-MM-YYYY.txt, or one file per drone
+    		flown[k] = moves;
+    		System.out.println((plans.size() > 1 ? "Drone " + (k + 1) + " done in " : "Done in ") + moves + " moves");
+    		total += moves;
+    	}
+    	
+    	try(var readings = new ReadingsWriter(Paths.get(directory, "readings-" + day + "-" + month + "-" + year + ".geojson").toString())) { //saves the sensor points, then the flight lines, as readings-DD-MM-YYYY.geojson
+    		for(SensorNode node : sensorNodeList) {
+    			if(visitedSensorLocations.contains(node.getLocation())) readings.writeSensor(node);
+    			else { //written as not visited so it will not show a reading, the node itself is left as it is for a later replan
+    				var unvisited = new SensorNode(node.getLocation(), 0, null, null, null, node.getLng(), node.getLat());
+    				unvisited.setToUnvisited();
+    				readings.writeSensor(unvisited);
+    			}
+    		}
+    		for(int k = 0; k < plans.size(); k++) { //each drone's line, read off its legs as it is written rather than collected first
+    			if(flown[k] > 0) readings.writeFlight(flownPoints(plans.get(k), flown[k]));
+    		}
+    	}
+    	return total;
+    }
+    
+    /*
+     * Plans one drone's flight: takes its node list (start node first), the buildings, the run's shared building edges and cost fields,
+     * its seed, the time the run started and the command line options
+     * returns its Plan, with no legs if it has no sensors to visit
+     */
+    static Replanner.Plan planDrone(ArrayList<SensorNode> sensorNodeList, NoFlyZones zones, EdgeIndex edgeIndex,
+    		CostFields costFields, int seed, long runStart, Options options) {
+    	if(sensorNodeList.size() < 2) return new Replanner.Plan(sensorNodeList, new ArrayList<Integer>(), new ArrayList<Path>());
+    	
+    	var context = droneContext(sensorNodeList.get(0), sensorNodeList.size(), edgeIndex, costFields, runStart, options);
+    	var distances = options.visibilityDistances ? new VisibilityGraph(sensorNodeList, zones, edgeIndex).sensorDistances() : null; //sensor distances around the buildings, null for straight lines
+    	var plan = getFullPath(sensorNodeList, distances, seed, context, options); //the order to visit the nodes in and the Path objects each holding a list of Instruction objects with the drones moves between nodes
+    	if(context.moveCache != null) System.out.println(context.moveCache.summary());
+    	return plan;
+    }
+    
+    /*
+     * Takes a drone's start node, the number of legs it will fly, the run's building edges and cost fields, the time the run started and the command line options
+     * returns the PathContext its legs are planned with
+     */
+    static PathContext droneContext(SensorNode start, int legs, EdgeIndex edgeIndex, CostFields costFields, long runStart, Options options) {
+    	var moveCache = options.globalLattice ? new MoveCache(Point.fromLngLat(start.getLng(), start.getLat())) : null; //move validity cache on the lattice anchored at the start point
+    	var budget = options.search == PathContext.Search.anytime ? new SearchBudget(options.legBudgetMs, options.runBudgetMs, runStart, legs) : null; //one leg per node, including the way back
+    	return new PathContext(edgeIndex, moveCache, options.search, budget, costFields);
+    }
+    
+    /*
+     * Takes in the Paths of one flight, the name of its flightpath file, and the set of visited sensors to add to
+     * saves at most maxMoves moves to the flightpath file, returns how many were saved
+     * throws IOException if the file cannot be written
+     */
+    private static int saveFlight(ArrayList<Path> fullPath, String fileName, Set<String> visitedSensorLocations) throws IOException {
+    	
+    	int counter = 1; //which number instruction in flightpath file
+    	
+    	try(var writer = new FlightPathWriter(fileName)) { //each move goes to the file as it is numbered, never the whole file as one String
+    		for(Path path : fullPath) { //for each Path (moves to get from one SensorNode to another) in fullPath
+    			
+    			for(Instruction inst : path.getInstructions()) { //for each of the individual instructions in the path
+    				writer.write(inst); //writes the instruction with the number instruction it is
+    				
+    				if(inst.getSensorLocation() != null) {
+    					visitedSensorLocations.add(inst.getSensorLocation());
+    				}
+    				
+    				if(counter > maxMoves) { //breaks early if out of moves
+    					System.out.println("Out of Moves");
+    					break;
+    				}
+    				counter++;
+    			}
+    			if(counter > maxMoves) break; //breaks early if out of moves
+    		}
+    	}
+    	return counter - 1;
+    }
+    
+   
+    /*
+     * Takes a drone's Plan and the moves of it saveFlight saved
+     * returns its start point and the end of each of those moves, read from the legs lazily
+     */
+    private static Iterable<Point> flownPoints(Replanner.Plan plan, int moves) {
+    	var start = Point.fromLngLat(plan.nodes.get(0).getLng(), plan.nodes.get(0).getLat());
+    	return () -> Stream.concat(Stream.of(start), plan.legs.stream()
+    			.flatMap(path -> path.getInstructions().stream())
+    			.map(Instruction::getPostMove)
+    			.limit(moves))
+    			.iterator();
+    }
+    
+    /*
+     * Takes in the list of SensorNodes, the distances to order them by (null for straight lines), the seed, the run's PathContext (building edges and caches) and the command line options
+     * returns the Plan of a flight that visits every node, or as many as fit with --orienteering, and returns to the start point
+     */
+    private static Replanner.Plan getFullPath(ArrayList<SensorNode> sensorNodeList, double[][] distances, int seed, PathContext context, Options options) {
+    	
+    	var optOrder = getOrder(sensorNodeList, distances, seed, options);
+    	
+    	if(options.orienteering) { //visits only the sensors the move limit allows, and gets back to the start
+    		TourOptimizer.Distances legDistances = distances != null ? (a, b) -> distances[a][b] : (a, b) -> Math.hypot(
+    				sensorNodeList.get(a).getLng() - sensorNodeList.get(b).getLng(), sensorNodeList.get(a).getLat() - sensorNodeList.get(b).getLat());
+    		return new OrienteeringPlanner(sensorNodeList, legDistances, context, options).plan(optOrder);
+    	}
+    	return new Replanner.Plan(sensorNodeList, optOrder, planPaths(sensorNodeList, optOrder, context, options));
+    }
+    
+    /*
+     * Takes in the list of SensorNodes, the order to visit them in (start node first), the run's PathContext and the command line options
+     * outputs a list of Path objects that visits the nodes in that order and returns to the start point
+     */
+    static ArrayList<Path> planPaths(ArrayList<SensorNode> sensorNodeList, ArrayList<Integer> optOrder, PathContext context, Options options) {
+    	
+    	if(options.parallelLegs) return ParallelLegPlanner.plan(sensorNodeList, optOrder, context); //plans the legs concurrently and stitches them
+    	
+    	var fullPath = new ArrayList<Path>();
+    	
+    	var index = optOrder.get(0); //index of first node
+    	var index2 = optOrder.get(1); //index of second node
+    	var startPoint = Point.fromLngLat(sensorNodeList.get(index).getLng(), sensorNodeList.get(index).getLat()); //first node coordinates
+    	var aimedEndPoint = Point.fromLngLat(sensorNodeList.get(index2).getLng(), sensorNodeList.get(index2).getLat()); //second node coordinates
+    	fullPath.add(new Path(startPoint, aimedEndPoint, sensorNodeList.get(index2).getLocation(), context)); //generates a path between those coordinates
+    	
+    	for(int i = 1; i < optOrder.size(); i++) {
+    		
+    		index = optOrder.get((i + 1) % optOrder.size()); //gets the index of the next node
+    		
+        	startPoint = fullPath.get(i - 1).getActualEndPoint(); //uses the endpoint of the last path as the start point of the new one
+        	aimedEndPoint = Point.fromLngLat(sensorNodeList.get(index).getLng(), sensorNodeList.get(index).getLat());  //gets next node location to aim for
+        	
+    		fullPath.add(new Path(startPoint, aimedEndPoint, sensorNodeList.get(index).getLocation(), context)); //generates Path between the two points and adds it to the list
+    	}
+    	   	
+    	return fullPath; //return list of Paths
+    }
+    
+    /*
+     * Takes in the list of SensorNodes, the distances to order them by (null for straight lines), the seed for the multi-start search and the command line options
+     * returns the order to visit them in, as indexes into the list, starting with the start node
+     */
+    private static ArrayList<Integer> getOrder(ArrayList<SensorNode> sensorNodeList, double[][] distances, int seed, Options options) {
+    	
+    	if(options.sparse) { //no distance table, the tour is built and improved from each sensor's nearest neighbors
+    		var finder = RouteFinder.sparse(sensorNodeList);
+    		finder.greedyTour();
+    		finder.localSearch();
+    		if(options.restarts > 0) finder.multiStart(seed, options.restarts, options.kicks, orderDeadline(options));
+    		finder.setStartNodeFirst();
+    		return finder.getOrder();
+    	}
+    	
+    	var finder = new RouteFinder(sensorNodeList); //creates a RouteFinder object, which takes the list of SensorNodes and decides what order to visit them in
+    	finder.tspInsertion(); //runs an insertion algorithm to choose the order
+    	improveOrder(finder, options);
+    	
+    	if(distances != null) {
+    		//insertion copes badly with distances that bend round buildings, so the straight line tour is improved with them as well
+    		//as building one from scratch with them, and the shorter of the two is kept
+    		finder.setDistances(distances);
+    		improveOrder(finder, options);
+    		
+    		var rebuilt = new RouteFinder(sensorNodeList, distances);
+    		rebuilt.tspInsertion();
+    		improveOrder(rebuilt, options);
+    		if(rebuilt.getTourLength() < finder.getTourLength()) finder = rebuilt;
+    	}
+    	if(options.restarts > 0) finder.multiStart(seed, options.restarts, options.kicks, orderDeadline(options));
+    	finder.setStartNodeFirst();
+    	return finder.getOrder();
+    }
+    
+    /*
+     * returns the System.nanoTime the multi-start search has to stop by, 0 for no limit
+     */
+    private static long orderDeadline(Options options) {
+    	return options.orderBudgetMs > 0 ? System.nanoTime() + options.orderBudgetMs * 1000000 : 0;
+    }
+    
+    /*
+     * Runs the local improvement heuristics on the finder's order, the neighbor list local search if asked for
+     */
+    private static void improveOrder(RouteFinder finder, Options options) {
+    	if(options.localSearch) {
+    		finder.localSearch();
+    	}
+    	else {
+    		finder.twoOptHeuristic();
+    		finder.swapHeuristic();
+    	}
+    }
+    
+    /*
+     * Takes in list of SensorNode objects
+     * returns the point of each node, in the same order
+     */
+    private static List<Point> sensorPoints(List<SensorNode> sensorNodeList) {
+    	var points = new ArrayList<Point>();
+    	for(SensorNode node : sensorNodeList) points.add(Point.fromLngLat(node.getLng(), node.getLat()));
+    	return points;
+    }
+    
+    
+}
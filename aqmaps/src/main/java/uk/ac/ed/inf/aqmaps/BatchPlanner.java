@@ -0,0 +1,213 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Plans every day of a date range in one run, writing the same flightpath and readings files App writes for each day
+ * The buildings are downloaded and parsed once, and the HTTP client, the W3W location cache and the warmed up JIT are shared by all the days
+ * --workers days are planned at once, while one fetcher thread downloads the sensor lists of the days after them in date order,
+ * at most lookaheadPerWorker days per worker ahead of planning
+ * A day whose sensors cannot be fetched, or whose files cannot be written, is reported and the rest of the range carries on
+ *
+ * Arguments: FROM TO LAT LNG SEED PORT [--flags], dates as DD-MM-YYYY, both included, every day planned with the same seed as App would be
+ */
+public class BatchPlanner {
+
+	final static int lookaheadPerWorker = 2; //sensor lists fetched and waiting, per worker
+	final static DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+	/*
+	 * Downloads the sensor list of one day
+	 */
+	interface Fetch {
+		ArrayList<SensorNode> sensors(LocalDate date) throws IOException;
+	}
+
+	/*
+	 * Plans one day from its sensors and saves its files, returns the moves flown
+	 */
+	interface Plan {
+		int moves(LocalDate date, ArrayList<SensorNode> sensors) throws IOException;
+	}
+
+	/*
+	 * What happened to one day: its sensors and moves and the time it took to plan, or why it failed
+	 */
+	static final class DayResult {
+		final LocalDate date;
+		final int sensors;
+		final int moves;
+		final long millis;
+		final String error; //null if the day was planned
+
+		DayResult(LocalDate date, int sensors, int moves, long millis, String error) {
+			this.date = date;
+			this.sensors = sensors;
+			this.moves = moves;
+			this.millis = millis;
+			this.error = error;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final long batchStart = System.nanoTime();
+		final var from = parseDate(args[0]);
+		final var to = parseDate(args[1]);
+		final double startLat = Double.parseDouble(args[2]); //Drone start position
+		final double startLng = Double.parseDouble(args[3]);
+		final int seed = Integer.parseInt(args[4]);
+		final String port = args[5]; //Server port, usually 80
+		final var options = Options.parse(args, 6);
+		Metrics.configure(options);
+		if(to.isBefore(from)) throw new IllegalArgumentException("The range ends before it starts: " + args[0] + " to " + args[1]);
+
+		var dates = new ArrayList<LocalDate>();
+		for(var date = from; !date.isAfter(to); date = date.plusDays(1)) dates.add(date);
+
+		long geometryStart = Metrics.start();
+		var zones = NoFlyZones.load(port, options.zonesCache); //parsed once for the whole range
+		var edgeIndex = new EdgeIndex(zones);
+		Metrics.stop(Metrics.Phase.geometry, geometryStart);
+
+		ArrayList<DayResult> results;
+		try(var wordsCache = options.wordsCache == null ? null : new WordsCache(options.wordsCache)) {
+			Fetch fetch = date -> FileManager.getSensorList(day(date), month(date), year(date), port, options.fetchConcurrency, wordsCache);
+			Plan plan = (date, sensors) -> App.planDay(day(date), month(date), year(date), sensors, App.startNodes(startLat, startLng, options.drones),
+					zones, edgeIndex, seed, System.nanoTime(), options, "."); //the run budget of --search=anytime counts from here, as it would for App
+			results = planAll(dates, options.workers, fetch, plan);
+			if(wordsCache != null) System.out.println(wordsCache.summary());
+		}
+		System.out.print(summary(results, System.nanoTime() - batchStart));
+		Metrics.finish(options, System.nanoTime() - batchStart); //totals over every day
+	}
+
+	/*
+	 * Fetches and plans every date on workers threads, returns what happened to each, in date order
+	 */
+	static ArrayList<DayResult> planAll(ArrayList<LocalDate> dates, int workers, Fetch fetch, Plan plan) throws InterruptedException {
+		var fetcher = Executors.newSingleThreadExecutor();
+		var planners = Executors.newFixedThreadPool(workers);
+		var ahead = new Semaphore(workers * lookaheadPerWorker); //taken when a day's fetch starts, given back when the day is done
+		try {
+			var days = new ArrayList<Future<DayResult>>();
+			for(LocalDate date : dates) {
+				var sensors = CompletableFuture.supplyAsync(() -> {
+					ahead.acquireUninterruptibly();
+					long fetchStart = Metrics.start();
+					try {
+						return fetch.sensors(date);
+					}
+					catch(IOException e) {
+						throw new CompletionException(e);
+					}
+					finally {
+						Metrics.stop(Metrics.Phase.fetch, fetchStart);
+					}
+				}, fetcher);
+				days.add(planners.submit(() -> planDay(date, sensors, ahead, plan)));
+			}
+
+			var results = new ArrayList<DayResult>();
+			for(Future<DayResult> day : days) {
+				try {
+					results.add(day.get());
+				}
+				catch(ExecutionException e) {
+					throw new IllegalStateException("Planning a day failed unexpectedly", e.getCause());
+				}
+			}
+			return results;
+		}
+		finally {
+			fetcher.shutdownNow();
+			planners.shutdownNow();
+		}
+	}
+
+	//waits for the day's sensors, plans it and saves its files, giving its lookahead permit back either way
+	private static DayResult planDay(LocalDate date, CompletableFuture<ArrayList<SensorNode>> sensors, Semaphore ahead, Plan plan) {
+		ArrayList<SensorNode> sensorNodeList;
+		try {
+			sensorNodeList = sensors.join();
+		}
+		catch(CompletionException e) {
+			ahead.release();
+			return failed(date, e.getCause());
+		}
+
+		long dayStart = System.nanoTime();
+		try {
+			int moves = plan.moves(date, sensorNodeList);
+			var result = new DayResult(date, sensorNodeList.size(), moves, (System.nanoTime() - dayStart) / 1000000, null);
+			System.out.println(date.format(dateFormat) + ": " + result.sensors + " sensors, " + moves + " moves, planned in " + result.millis + " ms");
+			return result;
+		}
+		catch(IOException | RuntimeException e) {
+			return failed(date, e);
+		}
+		finally {
+			ahead.release();
+		}
+	}
+
+	private static DayResult failed(LocalDate date, Throwable error) {
+		System.out.println(date.format(dateFormat) + " failed: " + error);
+		return new DayResult(date, 0, 0, 0, String.valueOf(error.getMessage()));
+	}
+
+	/*
+	 * returns the throughput of the batch and the days that failed, for the end of run report
+	 */
+	private static String summary(ArrayList<DayResult> results, long elapsedNanos) {
+		int planned = 0, sensors = 0, moves = 0;
+		long planning = 0;
+		var failures = new StringBuilder();
+		for(DayResult result : results) {
+			if(result.error != null) {
+				failures.append("  ").append(result.date.format(dateFormat)).append(": ").append(result.error).append('\n');
+				continue;
+			}
+			planned++;
+			sensors += result.sensors;
+			moves += result.moves;
+			planning += result.millis;
+		}
+		double seconds = elapsedNanos / 1e9;
+		var summary = new StringBuilder();
+		summary.append(String.format("Batch: %d of %d days planned in %.1f s, %.2f days/s%n", planned, results.size(), seconds, planned / seconds));
+		if(planned > 0) summary.append(String.format("  %d ms planning a day on average, %d sensors, %d moves%n", planning / planned, sensors, moves));
+		if(failures.length() > 0) summary.append(results.size() - planned).append(" failed:\n").append(failures);
+		return summary.toString();
+	}
+
+	private static LocalDate parseDate(String text) {
+		try {
+			return LocalDate.parse(text, dateFormat);
+		}
+		catch(DateTimeParseException e) {
+			throw new IllegalArgumentException("Expected a date as DD-MM-YYYY: " + text);
+		}
+	}
+
+	private static String day(LocalDate date) {
+		return String.format("%02d", date.getDayOfMonth());
+	}
+
+	private static String month(LocalDate date) {
+		return String.format("%02d", date.getMonthValue());
+	}
+
+	private static String year(LocalDate date) {
+		return String.format("%04d", date.getYear());
+	}
+}
@@ -0,0 +1,214 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * Bidirectional A* over two LatticeGraphs, one searching forward from the start of a leg and one backward from the sensor
+ * The two lattices have different origins so their nodes never coincide, instead they meet when a forward node comes within .0002 of a backward node:
+ * the moves from the backward node to the sensor are replayed from the forward node, shifted by the gap between the two,
+ * which ends the leg within .0002 of the sensor just like the forward search's own goal test
+ * The sensor itself is the root of the backward search, so a forward node reaching the goal disc is a meeting as well
+ * Each side expands from the one with the smaller open set, so a sensor in a pocket between buildings is dug out from its own side
+ * One workspace per thread, like LatticeSearch
+ */
+final class BidirectionalSearch {
+
+	private final static ThreadLocal<BidirectionalSearch> workspaces = ThreadLocal.withInitial(BidirectionalSearch::new);
+
+	final static double reach = .0002; //how close the meeting nodes, and so the end of the leg and the sensor, have to be
+
+	/*
+	 * returns the search workspace of the calling thread
+	 */
+	static BidirectionalSearch get() {
+		return workspaces.get();
+	}
+
+	private final Side forward = new Side();
+	private final Side backward = new Side();
+	private EdgeIndex edges;
+
+	private BidirectionalSearch() {
+	}
+
+	//sizes of the sets of both sides at the end of the last search, reported by Path
+	int getOpenCount() {
+		return forward.openSet.size() + backward.openSet.size();
+	}
+
+	int getClosedCount() {
+		return forward.closedCount + backward.closedCount;
+	}
+
+	int getNodeCount() {
+		return forward.graph.nodeCount + backward.graph.nodeCount;
+	}
+
+	/*
+	 * Finds a path from start to a point within .0002 of end
+	 * returns the points visited, start first, or null if no path exists
+	 */
+	ArrayList<Point> search(Point start, Point end, PathContext context) {
+		edges = context.edges;
+		forward.reset(start, end, context);
+		backward.reset(end, start, new PathContext(context.edges, null)); //the sensor is not on the global lattice
+
+		while(!forward.openSet.isEmpty() || !backward.openSet.isEmpty()) {
+			boolean fromStart = backward.openSet.isEmpty() || (!forward.openSet.isEmpty() && forward.openSet.size() <= backward.openSet.size());
+			var side = fromStart ? forward : backward;
+			var other = fromStart ? backward : forward;
+
+			int current = side.expand();
+			for(int node : other.near(side.graph, current)) { //expanded nodes of the other side within reach, fewest moves from their root first
+				var points = fromStart ? join(current, node) : join(node, current);
+				if(points != null) return points;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Follows the forward node back to the start and the backward node on to the sensor, shifting the backward moves to start at the forward node
+	 * returns null if a shifted move touches a building, or if the leg would have no moves at all
+	 */
+	private ArrayList<Point> join(int forwardNode, int backwardNode) {
+		var f = forward.graph;
+		var b = backward.graph;
+		if(f.cameFrom[forwardNode] == -1 && b.cameFrom[backwardNode] == -1) return null; //the drone has to move at least once
+
+		var shiftLng = f.lng[forwardNode] - b.lng[backwardNode];
+		var shiftLat = f.lat[forwardNode] - b.lat[backwardNode];
+		var suffix = new ArrayList<Point>();
+		double fromLng = f.lng[forwardNode], fromLat = f.lat[forwardNode];
+		for(int node = b.cameFrom[backwardNode]; node != -1; node = b.cameFrom[node]) {
+			double toLng = b.lng[node] + shiftLng, toLat = b.lat[node] + shiftLat;
+			if(!edges.isValidMove(fromLng, fromLat, toLng, toLat)) return null;
+			suffix.add(Point.fromLngLat(toLng, toLat));
+			fromLng = toLng;
+			fromLat = toLat;
+		}
+
+		var points = f.pathTo(forwardNode);
+		points.addAll(suffix);
+		return points;
+	}
+
+	/*
+	 * One direction of the search: a lattice graph, its open set and a grid of the nodes it has expanded
+	 */
+	private static final class Side {
+		final LatticeGraph graph = new LatticeGraph();
+		final IndexedHeap openSet = new IndexedHeap(1024); //keyed by fScore, the estimated distance left aims at the other side's root
+		int closedCount;
+		private final LatticeKeyMap cells = new LatticeKeyMap(1024); //grid cell -> first expanded node in it
+		private int[] nextInCell = new int[1024]; //expanded nodes in the same cell are chained through this
+		private double targetLng;
+		private double targetLat;
+
+		void reset(Point start, Point target, PathContext context) {
+			openSet.clear();
+			cells.clear();
+			closedCount = 0;
+			targetLng = target.longitude();
+			targetLat = target.latitude();
+
+			int startNode = graph.reset(start, context);
+			graph.gScore[startNode] = 0.;
+			graph.state[startNode] = LatticeGraph.open;
+			openSet.add(startNode, heuristic(graph.lng[startNode], graph.lat[startNode]));
+		}
+
+		/*
+		 * Expands the node with the least estimated total distance, the same step LatticeSearch takes
+		 * returns the expanded node, which is added to the grid
+		 */
+		int expand() {
+			var g = graph;
+			int current = openSet.poll();
+			g.generateNeighbors(current);
+			long valid = g.validMoves(current);
+
+			for(int dir = 0; dir < LatticeGraph.directions; dir++) {
+				int neighbor = g.neighbors[dir];
+				if(neighbor < 0 || (valid & (1L << dir)) == 0) continue;
+
+				var tentativeGScore = g.gScore[current] + LatticeGraph.moveLength;
+				if(tentativeGScore < g.gScore[neighbor]) {
+					g.cameFrom[neighbor] = current;
+					g.gScore[neighbor] = tentativeGScore;
+					var fScore = tentativeGScore + heuristic(g.lng[neighbor], g.lat[neighbor]);
+					if(g.state[neighbor] == LatticeGraph.open) {
+						openSet.update(neighbor, fScore);
+					}
+					else if(g.state[neighbor] == LatticeGraph.unseen) {
+						g.state[neighbor] = LatticeGraph.open;
+						openSet.add(neighbor, fScore);
+					}
+				}
+			}
+			g.state[current] = LatticeGraph.closed;
+			closedCount++;
+			addToGrid(current);
+			return current;
+		}
+
+		/*
+		 * returns the expanded nodes of this side within reach of a node of the other side's graph, fewest moves from this side's root first
+		 */
+		int[] near(LatticeGraph otherGraph, int otherNode) {
+			var pointLng = otherGraph.lng[otherNode];
+			var pointLat = otherGraph.lat[otherNode];
+			long column = cell(pointLng), row = cell(pointLat);
+			int found = 0;
+			var nodes = new int[8];
+			for(long r = row - 1; r <= row + 1; r++) {
+				for(long c = column - 1; c <= column + 1; c++) {
+					for(int node = cells.get(c, r); node >= 0; node = nextInCell[node]) {
+						var dLng = graph.lng[node] - pointLng;
+						var dLat = graph.lat[node] - pointLat;
+						if(Math.sqrt((dLat*dLat) + (dLng*dLng)) >= reach) continue;
+						if(found == nodes.length) nodes = Arrays.copyOf(nodes, found * 2);
+						nodes[found++] = node;
+					}
+				}
+			}
+			var result = Arrays.copyOf(nodes, found);
+			for(int i = 1; i < found; i++) { //few nodes, insertion sort by gScore
+				int node = result[i], j = i - 1;
+				for(; j >= 0 && graph.gScore[result[j]] > graph.gScore[node]; j--) result[j + 1] = result[j];
+				result[j + 1] = node;
+			}
+			return result;
+		}
+
+		private void addToGrid(int node) {
+			if(node >= nextInCell.length) nextInCell = Arrays.copyOf(nextInCell, Math.max(node + 1, nextInCell.length * 2));
+			long column = cell(graph.lng[node]), row = cell(graph.lat[node]);
+			int head = cells.putIfAbsent(column, row, node);
+			if(head < 0) {
+				nextInCell[node] = -1; //first node in the cell
+			}
+			else { //chained in right after the head, which stays in the map
+				nextInCell[node] = nextInCell[head];
+				nextInCell[head] = node;
+			}
+		}
+
+		//grid cells are reach wide, so every node within reach of a point is in the 3x3 cells around it
+		private static long cell(double coordinate) {
+			return (long) Math.floor(coordinate / reach);
+		}
+
+		/*
+		 * Estimates distance to the other side's root, weighted like LatticeSearch's
+		 */
+		private double heuristic(double pointLng, double pointLat) {
+			var latDif = (pointLat - targetLat);
+			var longDif = (pointLng - targetLng);
+			return Math.sqrt((latDif*latDif) + (longDif*longDif)) * 2;
+		}
+	}
+}
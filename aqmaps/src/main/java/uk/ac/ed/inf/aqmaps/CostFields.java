@@ -0,0 +1,166 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * Distance left to each sensor from anywhere in the containment area, going around the buildings, for use as an A* heuristic
+ * The containment area is covered by a coarse grid, a cell is free if its center is clear of the buildings
+ * and free cells next to each other (8 neighbors) are linked if the line between their centers is a valid move
+ * One Dijkstra wavefront per sensor, run in parallel across sensors, fills a float per cell with the distance from its center to the sensor
+ * Built once per run and only read after that, so it is safe to share between threads
+ */
+final class CostFields {
+
+	final static double cellSize = .0001; //a third of a move, fine enough to pass between buildings a move can pass between
+	final static int maxCells = 1 << 20;
+	final static int seedRadius = 2; //cells around a sensor that are joined to it directly if they can see it
+
+	private final EdgeIndex edges;
+	private final double minX; //lower left corner of the grid
+	private final double minY;
+	private final double size; //cell size, larger than cellSize if the area is huge
+	private final int columns;
+	private final int rows;
+	private final boolean[] free; //whether a cell's center is clear of the buildings
+	private final HashMap<Point, float[]> fields = new HashMap<Point, float[]>(); //sensor -> distance from every cell center, infinity if unreachable
+
+	/*
+	 * takes the building edges, the buildings and the containment area, and the points legs will aim for
+	 * the containment area is recognised as the polygon the first target is inside of
+	 */
+	public CostFields(EdgeIndex edges, NoFlyZones zones, List<Point> targets) {
+		this.edges = edges;
+
+		double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+		for(int p = 0; p < zones.getPolygonCount(); p++) {
+			if(zones.starts[p] == zones.starts[p + 1]) continue;
+			lowX = Math.min(lowX, zones.bounds[p * 4]);
+			lowY = Math.min(lowY, zones.bounds[p * 4 + 1]);
+			highX = Math.max(highX, zones.bounds[p * 4 + 2]);
+			highY = Math.max(highY, zones.bounds[p * 4 + 3]);
+		}
+		for(Point target : targets) {
+			lowX = Math.min(lowX, target.longitude());
+			lowY = Math.min(lowY, target.latitude());
+			highX = Math.max(highX, target.longitude());
+			highY = Math.max(highY, target.latitude());
+		}
+
+		double cell = cellSize;
+		while(((highX - lowX) / cell + 1) * ((highY - lowY) / cell + 1) > maxCells) cell *= 2;
+		minX = lowX;
+		minY = lowY;
+		size = cell;
+		columns = (int) ((highX - lowX) / cell) + 1;
+		rows = (int) ((highY - lowY) / cell) + 1;
+
+		free = new boolean[columns * rows];
+		Arrays.fill(free, true);
+		var first = targets.get(0);
+		for(int p = 0; p < zones.getPolygonCount(); p++) {
+			if(!zones.inside(p, first.longitude(), first.latitude())) markBlocked(zones, p); //the polygon the targets are in is the containment area, not a building
+		}
+
+		var fieldList = IntStream.range(0, targets.size()).parallel().mapToObj(t -> wavefront(targets.get(t))).toArray(float[][]::new);
+		for(int t = 0; t < targets.size(); t++) fields.put(targets.get(t), fieldList[t]);
+	}
+
+	/*
+	 * returns the field of a target, null if no field was built for it
+	 */
+	float[] fieldOf(Point target) {
+		return fields.get(target);
+	}
+
+	/*
+	 * Distance left from a point to the target of the field, read from the point's cell or, if that cell is blocked,
+	 * from the best free cell around it
+	 * returns infinity if no cell near the point reaches the target
+	 */
+	double distance(float[] field, double x, double y) {
+		int column = clamp((int) Math.floor((x - minX) / size), columns);
+		int row = clamp((int) Math.floor((y - minY) / size), rows);
+		int cell = row * columns + column;
+		if(field[cell] != Float.POSITIVE_INFINITY) return field[cell];
+
+		double best = Double.POSITIVE_INFINITY;
+		for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++) {
+			for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++) {
+				var value = field[r * columns + c];
+				if(value == Float.POSITIVE_INFINITY) continue;
+				best = Math.min(best, value + Math.hypot(x - centerX(c), y - centerY(r)));
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * Dijkstra from the target over the free cells
+	 */
+	private float[] wavefront(Point target) {
+		var distance = new double[columns * rows];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		var queue = new IndexedHeap(columns * rows);
+
+		double targetX = target.longitude(), targetY = target.latitude();
+		int targetColumn = clamp((int) Math.floor((targetX - minX) / size), columns);
+		int targetRow = clamp((int) Math.floor((targetY - minY) / size), rows);
+		for(int r = Math.max(targetRow - seedRadius, 0); r <= Math.min(targetRow + seedRadius, rows - 1); r++) {
+			for(int c = Math.max(targetColumn - seedRadius, 0); c <= Math.min(targetColumn + seedRadius, columns - 1); c++) {
+				int cell = r * columns + c;
+				if(!free[cell] || !edges.isValidMove(targetX, targetY, centerX(c), centerY(r))) continue;
+				distance[cell] = Math.hypot(targetX - centerX(c), targetY - centerY(r));
+				queue.add(cell, distance[cell]);
+			}
+		}
+
+		while(!queue.isEmpty()) {
+			int cell = queue.poll();
+			int row = cell / columns, column = cell % columns;
+			for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++) {
+				for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++) {
+					int next = r * columns + c;
+					if(!free[next]) continue;
+					var through = distance[cell] + ((r != row && c != column) ? size * Math.sqrt(2) : size);
+					if(through >= distance[next]) continue;
+					if(!edges.isValidMove(centerX(column), centerY(row), centerX(c), centerY(r))) continue;
+					distance[next] = through;
+					queue.addOrUpdate(next, through);
+				}
+			}
+		}
+
+		var field = new float[distance.length];
+		for(int c = 0; c < field.length; c++) field[c] = (float) distance[c];
+		return field;
+	}
+
+	//marks the cells whose centers are inside a building, only looking at the cells its bounding box covers
+	private void markBlocked(NoFlyZones zones, int polygon) {
+		int row1 = clamp((int) Math.floor((zones.bounds[polygon * 4 + 3] - minY) / size), rows);
+		int column1 = clamp((int) Math.floor((zones.bounds[polygon * 4 + 2] - minX) / size), columns);
+		for(int r = clamp((int) Math.floor((zones.bounds[polygon * 4 + 1] - minY) / size), rows); r <= row1; r++) {
+			for(int c = clamp((int) Math.floor((zones.bounds[polygon * 4] - minX) / size), columns); c <= column1; c++) {
+				if(zones.inside(polygon, centerX(c), centerY(r))) free[r * columns + c] = false;
+			}
+		}
+	}
+
+	private double centerX(int column) {
+		return minX + (column + .5) * size;
+	}
+
+	private double centerY(int row) {
+		return minY + (row + .5) * size;
+	}
+
+	private static int clamp(int index, int count) {
+		return index < 0 ? 0 : (index >= count ? count - 1 : index);
+	}
+}
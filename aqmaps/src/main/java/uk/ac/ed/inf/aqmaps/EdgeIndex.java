@@ -0,0 +1,283 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Uniform grid over the edges of every no-fly zone (buildings and the containment area)
+ * Each cell lists the edges whose bounding box overlaps it, so checking a move only looks at the edges near it
+ * Built once per run and shared by every Path, it is never changed after construction so it is safe to share between threads
+ */
+final class EdgeIndex {
+
+	final static double defaultCellSize = .0003; //one move length, a move never spans more than 2x2 cells
+	final static int maxCells = 1 << 22; //cells are made larger if a huge area would need more than this
+
+	//endpoints of every edge, edge e goes from (startX[e], startY[e]) to (endX[e], endY[e])
+	private final double[] startX;
+	private final double[] startY;
+	private final double[] endX;
+	private final double[] endY;
+	private final int[] firstColumn; //lowest column and row of the cells each edge is listed in
+	private final int[] firstRow;
+
+	private final double minX; //lower left corner of the grid
+	private final double minY;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	private final int[] cellStart; //edges of cell c are cellEdges[cellStart[c]] to cellEdges[cellStart[c + 1] - 1]
+	private final int[] cellEdges;
+
+	/*
+	 * takes the vertex lists of the buildings, edges are taken between consecutive vertices and from the last vertex back to the first
+	 */
+	public EdgeIndex(List<double[][]> buildingCoordinates) {
+		this(NoFlyZones.of(buildingCoordinates));
+	}
+
+	/*
+	 * takes the buildings and the containment area as NoFlyZones keeps them, edges are taken between consecutive vertices
+	 * and from the last vertex of each polygon back to its first
+	 */
+	EdgeIndex(NoFlyZones zones) {
+		int edgeCount = zones.x.length;
+
+		startX = new double[edgeCount];
+		startY = new double[edgeCount];
+		endX = new double[edgeCount];
+		endY = new double[edgeCount];
+
+		double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+		int e = 0;
+		for(int p = 0; p < zones.getPolygonCount(); p++) {
+			int first = zones.starts[p], end = zones.starts[p + 1];
+			for(int i = first, j = end - 1; i < end; j = i++) { //same edge order as the original per building loop
+				startX[e] = zones.x[i];
+				startY[e] = zones.y[i];
+				endX[e] = zones.x[j];
+				endY[e] = zones.y[j];
+				e++;
+			}
+			if(first == end) continue;
+			lowX = Math.min(lowX, zones.bounds[p * 4]);
+			lowY = Math.min(lowY, zones.bounds[p * 4 + 1]);
+			highX = Math.max(highX, zones.bounds[p * 4 + 2]);
+			highY = Math.max(highY, zones.bounds[p * 4 + 3]);
+		}
+		if(edgeCount == 0) {
+			lowX = lowY = highX = highY = 0;
+		}
+
+		double size = defaultCellSize;
+		while(((highX - lowX) / size + 1) * ((highY - lowY) / size + 1) > maxCells) size *= 2;
+
+		minX = lowX;
+		minY = lowY;
+		cellSize = size;
+		columns = (int) ((highX - lowX) / size) + 1;
+		rows = (int) ((highY - lowY) / size) + 1;
+
+		//counts the edges per cell, then fills them in (compressed rows, no per cell lists)
+		cellStart = new int[columns * rows + 1];
+		for(e = 0; e < edgeCount; e++) {
+			for(int r = row(Math.min(startY[e], endY[e])); r <= row(Math.max(startY[e], endY[e])); r++) {
+				for(int c = column(Math.min(startX[e], endX[e])); c <= column(Math.max(startX[e], endX[e])); c++) {
+					cellStart[r * columns + c + 1]++;
+				}
+			}
+		}
+		for(int c = 0; c < columns * rows; c++) cellStart[c + 1] += cellStart[c];
+
+		firstColumn = new int[edgeCount];
+		firstRow = new int[edgeCount];
+		for(e = 0; e < edgeCount; e++) {
+			firstColumn[e] = column(Math.min(startX[e], endX[e]));
+			firstRow[e] = row(Math.min(startY[e], endY[e]));
+		}
+
+		cellEdges = new int[cellStart[columns * rows]];
+		var fill = Arrays.copyOf(cellStart, columns * rows); //next free slot of each cell
+		for(e = 0; e < edgeCount; e++) {
+			for(int r = row(Math.min(startY[e], endY[e])); r <= row(Math.max(startY[e], endY[e])); r++) {
+				for(int c = column(Math.min(startX[e], endX[e])); c <= column(Math.max(startX[e], endX[e])); c++) {
+					cellEdges[fill[r * columns + c]++] = e;
+				}
+			}
+		}
+	}
+
+	public int getEdgeCount() {
+		return startX.length;
+	}
+
+	/*
+	 * takes endpoints of move
+	 * checks the edges in the cells the move's bounding box covers
+	 * returns true if the move crosses or touches no edge, false if it does
+	 */
+	public boolean isValidMove(double fromX, double fromY, double toX, double toY) {
+		Metrics.count(Metrics.Counter.collisionTests);
+		int column0 = column(Math.min(fromX, toX)), column1 = column(Math.max(fromX, toX));
+		int row0 = row(Math.min(fromY, toY)), row1 = row(Math.max(fromY, toY));
+		for(int r = row0; r <= row1; r++) {
+			for(int c = column0; c <= column1; c++) {
+				int cell = r * columns + c;
+				for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int e = cellEdges[k];
+					if(linesIntersect(fromX, fromY, toX, toY, startX[e], startY[e], endX[e], endY[e])) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * takes the start of a batch of moves, their ends, and a mask with bit d set for each move d to check (d < 64)
+	 * checks every move against the edges in the cells the whole batch covers, each edge once:
+	 * the side of the edge the start is on is worked out once per edge rather than once per move,
+	 * and a move is dropped from the rest of the pass as soon as one edge blocks it
+	 * returns the mask with only the bits of the moves that cross or touch no edge left set, bit for bit what isValidMove gives
+	 */
+	public long validMoves(double fromX, double fromY, double[] toX, double[] toY, long moves) {
+		Metrics.count(Metrics.Counter.collisionTests, Long.bitCount(moves));
+		if(moves == 0) return 0;
+		double lowX = fromX, lowY = fromY, highX = fromX, highY = fromY;
+		for(long left = moves; left != 0; left &= left - 1) {
+			int d = Long.numberOfTrailingZeros(left);
+			lowX = Math.min(lowX, toX[d]);
+			lowY = Math.min(lowY, toY[d]);
+			highX = Math.max(highX, toX[d]);
+			highY = Math.max(highY, toY[d]);
+		}
+		int column0 = column(lowX), column1 = column(highX);
+		int row0 = row(lowY), row1 = row(highY);
+
+		long valid = moves;
+		for(int r = row0; r <= row1; r++) {
+			for(int c = column0; c <= column1; c++) {
+				int cell = r * columns + c;
+				for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int e = cellEdges[k];
+					if(Math.max(firstColumn[e], column0) != c || Math.max(firstRow[e], row0) != r) continue; //checked in an earlier cell of the batch
+					if(Math.max(startX[e], endX[e]) < lowX || Math.min(startX[e], endX[e]) > highX
+							|| Math.max(startY[e], endY[e]) < lowY || Math.min(startY[e], endY[e]) > highY) continue; //misses the box of every move
+					valid = blockedBy(e, fromX, fromY, toX, toY, valid);
+					if(valid == 0) return 0;
+				}
+			}
+		}
+		return valid;
+	}
+
+	/*
+	 * Clears the bits of the moves in valid that edge e blocks
+	 * Same cross products as linesIntersect, in the same order, so the signs match it exactly
+	 * a cross product of exactly 0 (a collinear or touching point) needs relativeCCW's extra checks, so that move goes to linesIntersect
+	 */
+	private long blockedBy(int e, double fromX, double fromY, double[] toX, double[] toY, long valid) {
+		double x3 = startX[e], y3 = startY[e], x4 = endX[e], y4 = endY[e];
+		double edgeX = x4 - x3, edgeY = y4 - y3;
+		double startSide = relativeCCW(x3, y3, x4, y4, fromX, fromY); //same for every move
+		double px3 = x3 - fromX, py3 = y3 - fromY, px4 = x4 - fromX, py4 = y4 - fromY;
+		for(long left = valid; left != 0; left &= left - 1) {
+			int d = Long.numberOfTrailingZeros(left);
+			double moveX = toX[d] - fromX, moveY = toY[d] - fromY;
+			double side3 = px3 * moveY - py3 * moveX; //relativeCCW(from, to, 3) before it is reduced to a sign
+			double side4 = px4 * moveY - py4 * moveX;
+			double endSide = (toX[d] - x3) * edgeY - (toY[d] - y3) * edgeX; //relativeCCW(3, 4, to)
+			boolean blocked;
+			if(side3 == 0.0 || side4 == 0.0 || endSide == 0.0) blocked = linesIntersect(fromX, fromY, toX[d], toY[d], x3, y3, x4, y4);
+			else blocked = Math.signum(side3) * Math.signum(side4) <= 0 && startSide * Math.signum(endSide) <= 0;
+			if(blocked) valid &= ~(1L << d);
+		}
+		return valid;
+	}
+
+	/*
+	 * takes the ends of a line of any length
+	 * walks the rows of cells the line passes through, and in each row only the cells the line covers there
+	 * returns true if the line crosses no edge at a point inside both, touching an edge or sharing an end with one is allowed
+	 */
+	public boolean isClearSight(double fromX, double fromY, double toX, double toY) {
+		double lowY = Math.min(fromY, toY), highY = Math.max(fromY, toY);
+		int row0 = row(lowY), row1 = row(highY);
+		int column0 = column(Math.min(fromX, toX)), column1 = column(Math.max(fromX, toX));
+		for(int r = row0; r <= row1; r++) {
+			int first = column0, last = column1;
+			if(fromY != toY) { //the part of the line in this row, one column either side for rounding
+				double bandLow = r == row0 ? lowY : minY + r * cellSize;
+				double bandHigh = r == row1 ? highY : minY + (r + 1) * cellSize;
+				double x0 = fromX + (toX - fromX) * (bandLow - fromY) / (toY - fromY);
+				double x1 = fromX + (toX - fromX) * (bandHigh - fromY) / (toY - fromY);
+				first = Math.max(column0, column(Math.min(x0, x1)) - 1);
+				last = Math.min(column1, column(Math.max(x0, x1)) + 1);
+			}
+			for(int c = first; c <= last; c++) {
+				int cell = r * columns + c;
+				for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int e = cellEdges[k];
+					if(crosses(fromX, fromY, toX, toY, startX[e], startY[e], endX[e], endY[e])) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	//cell column of an x coordinate, clamped to the grid so anything outside still maps consistently
+	private int column(double x) {
+		int c = (int) Math.floor((x - minX) / cellSize);
+		return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+	}
+
+	private int row(double y) {
+		int r = (int) Math.floor((y - minY) / cellSize);
+		return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+	}
+
+	/*
+	 * Whether segment 1-2 and segment 3-4 intersect, touching counts
+	 * Same arithmetic as java.awt.geom.Line2D.linesIntersect, so results match the Line2D test exactly, without creating objects
+	 */
+	static boolean linesIntersect(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4) {
+		return (relativeCCW(x1, y1, x2, y2, x3, y3) * relativeCCW(x1, y1, x2, y2, x4, y4) <= 0)
+			&& (relativeCCW(x3, y3, x4, y4, x1, y1) * relativeCCW(x3, y3, x4, y4, x2, y2) <= 0);
+	}
+
+	/*
+	 * Which side of the line through 1-2 the point p lies on: -1, 1, or 0 if it is on the segment
+	 * Collinear points beyond either end report the side matching Line2D.relativeCCW
+	 */
+	static int relativeCCW(double x1, double y1, double x2, double y2, double px, double py) {
+		x2 -= x1;
+		y2 -= y1;
+		px -= x1;
+		py -= y1;
+		double ccw = px * y2 - py * x2;
+		if(ccw == 0.0) { //collinear, check where along the line the point is
+			ccw = px * x2 + py * y2;
+			if(ccw > 0.0) {
+				px -= x2;
+				py -= y2;
+				ccw = px * x2 + py * y2;
+				if(ccw < 0.0) ccw = 0.0;
+			}
+		}
+		return (ccw < 0.0) ? -1 : ((ccw > 0.0) ? 1 : 0);
+	}
+
+	/*
+	 * Whether segments 1-2 and 3-4 cross at a point inside both, touching or sharing an end does not count
+	 */
+	static boolean crosses(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4) {
+		double d1 = side(x3, y3, x4, y4, x1, y1), d2 = side(x3, y3, x4, y4, x2, y2);
+		double d3 = side(x1, y1, x2, y2, x3, y3), d4 = side(x1, y1, x2, y2, x4, y4);
+		return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+	}
+
+	//cross product telling which side of the line through 1-2 the point p is on, 0 if on it
+	private static double side(double x1, double y1, double x2, double y2, double px, double py) {
+		return (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+	}
+}
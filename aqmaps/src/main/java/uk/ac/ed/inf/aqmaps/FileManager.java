@@ -1,23 +1,26 @@
 package uk.ac.ed.inf.aqmaps;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
-import com.mapbox.geojson.Feature;
-import com.mapbox.geojson.FeatureCollection;
-import com.mapbox.geojson.Point;
-import com.mapbox.geojson.Polygon;
+import com.google.gson.stream.JsonReader;
 
 public class FileManager {
 	
@@ -25,91 +28,163 @@ public class FileManager {
 	final static double maxLat = 55.946233;
 	final static double minLon = -3.192473;
 	final static double maxLon = -3.184319;
+	
+	final static int defaultConcurrency = 16; //W3W requests in flight at once unless --fetch-concurrency says otherwise
+	
+	private final static HttpClient client = HttpClient.newHttpClient(); //one client, and its connection pool, for every request of the run
+	private final static Gson gson = new Gson();
 
 	/*
      * takes in the day/month/year to operate on and the port where the webserver is
      * returns a list of all the SensorNode objects with including their coordinates (instead of W3W format)
      */
-    public static ArrayList<SensorNode> getSensorList(String day, String month, String year, String port)
+    public static ArrayList<SensorNode> getSensorList(String day, String month, String year, String port) throws IOException
+    {
+    	return getSensorList(day, month, year, port, defaultConcurrency, null);
+    }
+    
+	/*
+     * takes in the day/month/year to operate on, the port where the webserver is, how many W3W requests may be in flight at once
+     * and the WordsCache to look locations up in first (null for none), which learns every location the server is asked for
+     * returns a list of all the SensorNode objects with including their coordinates (instead of W3W format)
+     * throws IOException if any request fails, or the server answers one with anything but 200
+     */
+    public static ArrayList<SensorNode> getSensorList(String day, String month, String year, String port, int concurrency, WordsCache cache) throws IOException
     {
-    	var response = getDataFromURI("http://localhost:" + port + "/maps/" + year + "/" + month + "/" + day + "/air-quality-data.json"); //gets SensorNode data and converts it into SensorNode objects
-    	// The response object is of class HttpResponse<String>
     	Type listType = new TypeToken<ArrayList<SensorNode>>() {}.getType();
-    	// Use the ”fromJson(String, Type)” method
-    	ArrayList<SensorNode> sensorNodeList = new Gson().fromJson(response.body(), listType);
-    	
+    	ArrayList<SensorNode> sensorNodeList = getJson("http://localhost:" + port + "/maps/" + year + "/" + month + "/" + day + "/air-quality-data.json", listType); //gets SensorNode data and converts it into SensorNode objects
+    	locate(sensorNodeList, port, concurrency, cache);
+    	return sensorNodeList;
+    }
+    
+	/*
+     * takes in SensorNodes, the port where the webserver is, how many W3W requests may be in flight at once
+     * and the WordsCache to look locations up in first (null for none), which learns every location the server is asked for
+     * sets the coordinates of every node from its W3W location
+     * throws IOException if any request fails, or the server answers one with anything but 200
+     */
+    public static void locate(List<SensorNode> sensorNodeList, String port, int concurrency, WordsCache cache) throws IOException
+    {
+    	//looks up every What3Words location at once, at most concurrency of them in flight
+    	var permits = new Semaphore(concurrency);
+    	var lookups = new ArrayList<CompletableFuture<Void>>();
     	for(SensorNode node : sensorNodeList) { //for each SensorNode created
-    		if(node.getLocation() != null) { //As long as it has a What3Words component
-	    		var tempWords = node.getLocation().split("\\."); //extracts the words
-	    		var response2 = getDataFromURI("http://localhost:" + port + "/words/" + tempWords[0] + "/" + tempWords[1] + "/" + tempWords[2] + "/details.json"); //reads the information from the webserver
-	    		var tempLocation = new Gson().fromJson(response2.body(), Location.class); //creates Location object from that information
-	    		node.setLngLat(tempLocation.getLng(), tempLocation.getLat()); //pulls longitude and latitude of location and adds them to SensorNode
+    		if(node.getLocation() == null) continue; //As long as it has a What3Words component
+    		var cached = cache == null ? null : cache.get(node.getLocation());
+    		if(cached != null) {
+    			node.setLngLat(cached[0], cached[1]);
+    			continue;
+    		}
+    		var tempWords = node.getLocation().split("\\."); //extracts the words
+    		var uri = "http://localhost:" + port + "/words/" + tempWords[0] + "/" + tempWords[1] + "/" + tempWords[2] + "/details.json";
+    		try {
+    			permits.acquire();
+    		}
+    		catch(InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    			throw new InterruptedIOException("Interrupted while fetching " + uri);
     		}
+    		lookups.add(getJsonAsync(uri, Location.class)
+    				.thenAccept(tempLocation -> {
+    					node.setLngLat(tempLocation.getLng(), tempLocation.getLat()); //pulls longitude and latitude of location and adds them to SensorNode
+    					if(cache != null) remember(cache, node.getLocation(), tempLocation);
+    				})
+    				.whenComplete((done, error) -> permits.release()));
     	}
     	
-    	return sensorNodeList;
+    	try {
+    		CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).join();
+    	}
+    	catch(CompletionException e) {
+    		throw asIOException(e.getCause());
+    	}
     }
     
     /*
-     * takes in the port where the server is
-     * returns all the building features
+     * Takes a String URL
+     * returns the raw bytes of the response body
+     * throws IOException if the request fails or the server does not answer with 200
      */
-    public static List<Feature> getBuildingFeatures(String port) {
-    	
-    	//gets all buildings from server
-    	var response = getDataFromURI("http://localhost:" + port + "/buildings/no-fly-zones.geojson");
-    	var buildingCollection = FeatureCollection.fromJson(response.body());
-    	var buildingFeatures = buildingCollection.features();
-    	
-    	//creates the drone containment area feature
-    	List<Point> boxVertices = Arrays.asList(Point.fromLngLat(minLon, minLat), Point.fromLngLat(maxLon, minLat), Point.fromLngLat(maxLon, maxLat), Point.fromLngLat(minLon, maxLat), Point.fromLngLat(minLon, minLat));
-		List<List<Point>> boxVerticesList = Arrays.asList(boxVertices);
-		Feature outerBox = Feature.fromGeometry(Polygon.fromLngLats(boxVerticesList));
-		outerBox.addNumberProperty("fill-opacity", 0);
-		
-		//adds drone containment area to building features
-		buildingFeatures.add(outerBox);
-		
-		return buildingFeatures;
+    public static byte[] getBytesFromURI(String uri) throws IOException
+    {
+    	var request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+    	try {
+    		var response = client.send(request, BodyHandlers.ofByteArray());
+    		checkStatus(uri, response.statusCode());
+    		return response.body();
+    	}
+    	catch(InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new InterruptedIOException("Interrupted while fetching " + uri);
+    	}
     }
     
     /*
-     * Takes a String URL
-     * returns the corresponding Data
+     * Takes a String URL and the type of its JSON
+     * returns the parsed JSON, read straight from the response stream rather than from a String of the whole body
      */
-    public static HttpResponse<String> getDataFromURI(String uri)
+    private static <T> T getJson(String uri, Type type) throws IOException
     {
+    	var request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
     	try {
-    		// Create a new HttpClient with default settings.
-    		var client = HttpClient.newHttpClient();
-    		// HttpClient assumes that it is a GET request by default.
-    		var request = HttpRequest.newBuilder()
-    				.uri(URI.create(uri))
-    				.build();
-			return client.send(request, BodyHandlers.ofString());
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-    	
-    	return null;
+    		return parse(uri, client.send(request, BodyHandlers.ofInputStream()), type);
+    	}
+    	catch(InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new InterruptedIOException("Interrupted while fetching " + uri);
+    	}
     }
     
     /*
-     * takes in a str to save and a filename
-     * saves the file 
+     * Like getJson, but returns at once, the future completes with the parsed JSON or exceptionally with an IOException
      */
-    public static void saveFile(String fileStr, String filename) {
-    	
+    private static <T> CompletableFuture<T> getJsonAsync(String uri, Class<T> type)
+    {
+    	var request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+    	return client.sendAsync(request, BodyHandlers.ofInputStream()).thenApply(response -> {
+    		try {
+    			return parse(uri, response, type);
+    		}
+    		catch(IOException e) {
+    			throw new CompletionException(e);
+    		}
+    	});
+    }
+    
+    //checks the status, then parses the body as it streams in, closing it either way
+    private static <T> T parse(String uri, HttpResponse<InputStream> response, Type type) throws IOException
+    {
+    	try(var reader = new JsonReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+    		checkStatus(uri, response.statusCode());
+    		T value = gson.fromJson(reader, type);
+    		if(value == null) throw new IOException("Empty response from " + uri);
+    		return value;
+    	}
+    	catch(JsonParseException e) {
+    		throw new IOException("Malformed JSON from " + uri, e);
+    	}
+    }
+    
+    //adds a fetched location to the cache, inside a future, so a failed write fails the lookup like a failed request
+    private static void remember(WordsCache cache, String words, Location location)
+    {
     	try {
-             FileWriter myWriter = new FileWriter(filename); //opens file
-             myWriter.write(fileStr); //writes to file
-             myWriter.close(); //closes file
-        }
-    	catch (IOException e) {
-             System.out.println("An error occurred.");
-             e.printStackTrace();
-        }   
+    		cache.put(words, location.getLng(), location.getLat());
+    	}
+    	catch(IOException e) {
+    		throw new CompletionException(e);
+    	}
+    }
+    
+    private static void checkStatus(String uri, int status) throws IOException
+    {
+    	if(status != 200) throw new IOException("Server answered " + status + " for " + uri);
+    }
+    
+    //the IOException behind a failed request, wrapped in one if it is something else
+    private static IOException asIOException(Throwable error)
+    {
+    	if(error instanceof IOException) return (IOException) error;
+    	return new IOException(error);
     }
 }
@@ -0,0 +1,91 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Splits the sensors between several drones, each flying its own closed tour from its own start point
+ * Capacity-balanced k-means: every drone takes at most its share of the sensors (the sensor count over the drone count, rounded up),
+ * sensor-drone pairs are handed out nearest first while the drone has room, then each drone's center moves to the mean of its sensors
+ * and its start point, and this repeats until nothing moves. Counting the start point keeps each cluster near the drone that has to fly it
+ */
+final class FleetPlanner {
+
+	final static int clusterRounds = 20; //most rounds of handing out sensors and moving the centers
+
+	private FleetPlanner() {
+	}
+
+	/*
+	 * takes the sensors and the start node of every drone
+	 * returns one node list per drone, in the order of the starts, each with the drone's start node first and then its sensors in their original order
+	 */
+	static List<ArrayList<SensorNode>> partition(List<SensorNode> sensors, List<SensorNode> starts) {
+		int n = sensors.size(), drones = starts.size();
+		var assignment = new int[n];
+		if(drones > 1) assignment = cluster(sensors, starts);
+
+		var lists = new ArrayList<ArrayList<SensorNode>>();
+		for(SensorNode start : starts) {
+			var list = new ArrayList<SensorNode>();
+			list.add(start);
+			lists.add(list);
+		}
+		for(int i = 0; i < n; i++) lists.get(assignment[i]).add(sensors.get(i));
+		return lists;
+	}
+
+	//returns the drone of each sensor
+	private static int[] cluster(List<SensorNode> sensors, List<SensorNode> starts) {
+		int n = sensors.size(), drones = starts.size();
+		int capacity = (n + drones - 1) / drones;
+		var centerLng = new double[drones];
+		var centerLat = new double[drones];
+		for(int k = 0; k < drones; k++) {
+			centerLng[k] = starts.get(k).getLng();
+			centerLat[k] = starts.get(k).getLat();
+		}
+
+		var assignment = new int[n];
+		Arrays.fill(assignment, -1);
+		var pairs = new long[n * drones]; //distance as float bits (which sort like the distances) in the high half, sensor * drones + drone in the low half
+		for(int round = 0; round < clusterRounds; round++) {
+			for(int i = 0; i < n; i++) {
+				for(int k = 0; k < drones; k++) {
+					var distance = Math.hypot(sensors.get(i).getLng() - centerLng[k], sensors.get(i).getLat() - centerLat[k]);
+					pairs[i * drones + k] = ((long) Float.floatToIntBits((float) distance) << 32) | (i * drones + k);
+				}
+			}
+			Arrays.sort(pairs);
+
+			var next = new int[n];
+			Arrays.fill(next, -1);
+			var size = new int[drones];
+			for(long pair : pairs) {
+				int index = (int) pair;
+				int i = index / drones, k = index % drones;
+				if(next[i] >= 0 || size[k] == capacity) continue;
+				next[i] = k;
+				size[k]++;
+			}
+
+			if(Arrays.equals(next, assignment)) break;
+			assignment = next;
+
+			for(int k = 0; k < drones; k++) { //the start point counts as one more member
+				centerLng[k] = starts.get(k).getLng();
+				centerLat[k] = starts.get(k).getLat();
+			}
+			for(int i = 0; i < n; i++) {
+				centerLng[assignment[i]] += sensors.get(i).getLng();
+				centerLat[assignment[i]] += sensors.get(i).getLat();
+			}
+			for(int k = 0; k < drones; k++) {
+				centerLng[k] /= size[k] + 1;
+				centerLat[k] /= size[k] + 1;
+			}
+		}
+		return assignment;
+	}
+}
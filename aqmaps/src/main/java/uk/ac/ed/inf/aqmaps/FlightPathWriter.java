@@ -0,0 +1,47 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Writes a flightpath file one move at a time, as "number,instruction" lines, through a buffer over the file's channel
+ * so a flight of any length is written without ever holding the whole file in memory
+ */
+final class FlightPathWriter implements Closeable {
+
+	private final static int bufferSize = 1 << 16; //characters gathered before they go to the channel
+
+	private final BufferedWriter writer;
+	private int count; //moves written so far
+
+	/*
+	 * creates the file, or empties it if it exists
+	 * throws IOException if it cannot be opened
+	 */
+	FlightPathWriter(String fileName) throws IOException {
+		var channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), bufferSize);
+	}
+
+	/*
+	 * writes the next move, numbered from 1
+	 */
+	void write(Instruction inst) throws IOException {
+		count++;
+		writer.write(Integer.toString(count));
+		writer.write(',');
+		writer.write(inst.toString());
+		writer.write('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close(); //flushes, then closes the channel
+	}
+}
@@ -0,0 +1,141 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+
+/*
+ * Binary min-heap of integer ids ordered by a double key
+ * Tracks where every id sits in the heap, so the key of a queued id can be changed in place (decrease-key)
+ * instead of the id being queued twice or the heap being left out of order
+ * Ties are broken by the smaller id, which keeps every search using it deterministic
+ */
+final class IndexedHeap {
+	private int[] heap; //ids in heap order
+	private int[] position; //index of each id in heap, -1 if the id is not queued
+	private double[] keys; //current key of each id
+	private int size; //number of queued ids
+
+	public IndexedHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		keys = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int id) {
+		return id < position.length && position[id] >= 0;
+	}
+
+	//key the id was last queued or updated with
+	public double key(int id) {
+		return keys[id];
+	}
+
+	//smallest key, heap must not be empty
+	public double peekKey() {
+		return keys[heap[0]];
+	}
+
+	/*
+	 * Queues an id that is not queued yet
+	 */
+	public void add(int id, double key) {
+		Metrics.count(Metrics.Counter.heapOperations);
+		ensureCapacity(id + 1);
+		keys[id] = key;
+		position[id] = size;
+		heap[size] = id;
+		siftUp(size++);
+	}
+
+	/*
+	 * Changes the key of a queued id and restores heap order, works for both smaller and larger keys
+	 */
+	public void update(int id, double key) {
+		Metrics.count(Metrics.Counter.heapOperations);
+		double old = keys[id];
+		keys[id] = key;
+		if(key < old) siftUp(position[id]);
+		else siftDown(position[id]);
+	}
+
+	/*
+	 * Queues the id, or changes its key if it is already queued
+	 */
+	public void addOrUpdate(int id, double key) {
+		if(contains(id)) update(id, key);
+		else add(id, key);
+	}
+
+	/*
+	 * Removes and returns the id with the smallest key
+	 */
+	public int poll() {
+		Metrics.count(Metrics.Counter.heapOperations);
+		int result = heap[0];
+		position[result] = -1;
+		if(--size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return result;
+	}
+
+	/*
+	 * Empties the heap, only touching the ids that are still queued
+	 */
+	public void clear() {
+		for(int i = 0; i < size; i++) position[heap[i]] = -1;
+		size = 0;
+	}
+
+	private boolean less(int a, int b) {
+		return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+	}
+
+	private void siftUp(int index) {
+		int id = heap[index];
+		while(index > 0) {
+			int parent = (index - 1) >>> 1;
+			if(!less(id, heap[parent])) break;
+			heap[index] = heap[parent];
+			position[heap[index]] = index;
+			index = parent;
+		}
+		heap[index] = id;
+		position[id] = index;
+	}
+
+	private void siftDown(int index) {
+		int id = heap[index];
+		int half = size >>> 1;
+		while(index < half) {
+			int child = (index << 1) + 1;
+			if(child + 1 < size && less(heap[child + 1], heap[child])) child++;
+			if(!less(heap[child], id)) break;
+			heap[index] = heap[child];
+			position[heap[index]] = index;
+			index = child;
+		}
+		heap[index] = id;
+		position[id] = index;
+	}
+
+	private void ensureCapacity(int ids) {
+		if(ids <= position.length) return;
+		int capacity = Math.max(ids, position.length * 2);
+		heap = Arrays.copyOf(heap, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+		int old = position.length;
+		position = Arrays.copyOf(position, capacity);
+		Arrays.fill(position, old, capacity, -1);
+	}
+}
@@ -0,0 +1,138 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.stream.IntStream;
+
+/*
+ * 2-d tree over points held in flat coordinate arrays, for nearest neighbor queries without a distance table
+ * The tree is implicit: the point indexes are arranged so that the middle of every range splits it,
+ * by x at even depths and by y at odd depths, with the two halves of the range as its subtrees
+ * Built once in O(n log n), only read after that, so queries can run from many threads at once
+ */
+final class KdTree {
+
+	private final double[] x;
+	private final double[] y;
+	private final int[] points; //point indexes in tree order
+
+	/*
+	 * takes the coordinates of the points, which are not copied and must not change
+	 */
+	public KdTree(double[] x, double[] y) {
+		this.x = x;
+		this.y = y;
+		points = new int[x.length];
+		for(int i = 0; i < points.length; i++) points[i] = i;
+		build(0, points.length, 0);
+	}
+
+	/*
+	 * returns the k points nearest to point i, not counting i itself, nearest first
+	 * fewer if there are not that many other points
+	 */
+	public int[] nearest(int i, int k) {
+		k = Math.max(Math.min(k, points.length - 1), 0);
+		var query = new Query(i, k);
+		if(k > 0) search(query, 0, points.length, 0);
+		return query.found;
+	}
+
+	/*
+	 * Candidate lists for TourOptimizer, the k nearest other points of every point, worked out in parallel
+	 */
+	public int[][] nearestCandidates(int k) {
+		return IntStream.range(0, points.length).parallel().mapToObj(i -> nearest(i, k)).toArray(int[][]::new);
+	}
+
+	//arranges points[lo, hi) so the middle splits it on the depth's axis, then does the same for both halves
+	private void build(int lo, int hi, int depth) {
+		while(hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi, mid, depth % 2 == 0 ? x : y);
+			build(mid + 1, hi, depth + 1);
+			hi = mid; //loops on the lower half rather than recursing, so the stack stays shallow
+			depth++;
+		}
+	}
+
+	/*
+	 * Quickselect: moves the point that belongs at position k of points[lo, hi) when sorted by axis there,
+	 * with no greater point before it and no smaller one after it
+	 * three-way partitions so that many equal coordinates, as on a grid of sensors, do not make it quadratic
+	 */
+	private void select(int lo, int hi, int k, double[] axis) {
+		while(hi - lo > 1) {
+			var pivot = axis[points[(lo + hi) >>> 1]];
+			int less = lo, i = lo, greater = hi; //[lo, less) < pivot, [less, i) == pivot, [greater, hi) > pivot
+			while(i < greater) {
+				var value = axis[points[i]];
+				if(value < pivot) swap(less++, i++);
+				else if(value > pivot) swap(i, --greater);
+				else i++;
+			}
+			if(k < less) hi = less;
+			else if(k >= greater) lo = greater;
+			else return; //k is among the points equal to the pivot
+		}
+	}
+
+	private void swap(int a, int b) {
+		int temp = points[a];
+		points[a] = points[b];
+		points[b] = temp;
+	}
+
+	private void search(Query query, int lo, int hi, int depth) {
+		if(lo >= hi) return;
+		int mid = (lo + hi) >>> 1;
+		int point = points[mid];
+		if(point != query.point) query.offer(point, squared(query.point, point));
+
+		var gap = depth % 2 == 0 ? x[query.point] - x[point] : y[query.point] - y[point];
+		if(gap < 0) { //the query's side first, the other only if it may hold something nearer
+			search(query, lo, mid, depth + 1);
+			if(gap * gap < query.worst()) search(query, mid + 1, hi, depth + 1);
+		}
+		else {
+			search(query, mid + 1, hi, depth + 1);
+			if(gap * gap < query.worst()) search(query, lo, mid, depth + 1);
+		}
+	}
+
+	private double squared(int a, int b) {
+		var dx = x[a] - x[b];
+		var dy = y[a] - y[b];
+		return dx * dx + dy * dy;
+	}
+
+	/*
+	 * The k nearest points seen so far, kept in order, like TourOptimizer.nearestCandidates
+	 */
+	private static final class Query {
+		final int point;
+		final int[] found;
+		final double[] distance; //squared distance to each found point
+		int count;
+
+		Query(int point, int k) {
+			this.point = point;
+			found = new int[k];
+			distance = new double[k];
+		}
+
+		//squared distance a point has to beat to be kept, infinity until k points are found
+		double worst() {
+			return count < found.length ? Double.POSITIVE_INFINITY : distance[count - 1];
+		}
+
+		void offer(int other, double squared) {
+			if(squared >= worst()) return;
+			int i = count < found.length ? count++ : count - 1;
+			for(; i > 0 && distance[i - 1] > squared; i--) {
+				found[i] = found[i - 1];
+				distance[i] = distance[i - 1];
+			}
+			found[i] = other;
+			distance[i] = squared;
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * The nodes a lattice search has generated, kept entirely in primitive arrays that are reused from one search to the next
+ * A node is a point reachable from the search's start by moves of .0003 in multiples of 10 degrees, identified by a key packed into two longs
+ *
+ * Two ways of keying nodes:
+ * the leg lattice counts the steps taken along each of the 18 axes (7 bits per axis), with positions added up move by move from the leg's start,
+ * the global lattice uses the 12 moves from 0 to 110 degrees as a basis (10 bits each), since the move at 120+j*10 degrees is the move at 60+j*10
+ * minus the move at j*10, so every point has exactly one key, positions are worked out from the key and the run's start point,
+ * and move validity can be cached across legs in a MoveCache
+ */
+final class LatticeGraph {
+
+	final static double moveLength = .0003; //distance step each move covers
+	final static int directions = 36; //number of allowed move angles, 10 degrees apart
+	final static double[] moveLng = new double[directions]; //longitude change of a move in each direction
+	final static double[] moveLat = new double[directions]; //latitude change of a move in each direction
+
+	//leg lattice keys, one lane per axis
+	final static int legLaneBits = 7; //bits used for the step count along each axis
+	final static int legLanesPerWord = 9; //axes 0-8 live in the low word, 9-17 in the high word
+	final static long legStartLo; //packed key of the leg's start
+	final static long legStartHi;
+	private final static boolean[] legMoveInHigh = new boolean[directions]; //whether the move changes the high word
+	private final static int[] legMoveShift = new int[directions]; //bit position of the axis the move changes
+	private final static int[] legMoveStep = new int[directions]; //+1 or -1 along that axis
+
+	//global lattice keys, one lane per basis move
+	final static int globalLaneBits = 10;
+	final static int globalLanesPerWord = 6;
+	final static int globalBasis = 12; //moves 0 to 11 are the basis
+	final static long globalStartLo; //packed key of the run's start point
+	final static long globalStartHi;
+	private final static int[][] globalMoveLanes = new int[directions][]; //basis lanes the move changes
+	private final static int[][] globalMoveSteps = new int[directions][]; //+1 or -1 for each of those lanes
+
+	static {
+		for(int dir = 0; dir < directions; dir++) {
+			var angle = (dir * 10) * Math.PI/180; //same expression as the original neighbor generation, so positions match bit for bit
+			moveLng[dir] = moveLength * Math.cos(angle);
+			moveLat[dir] = moveLength * Math.sin(angle);
+
+			int axis = dir % 18; //angles 180 degrees apart share an axis
+			int sign = dir < 18 ? 1 : -1;
+			legMoveInHigh[dir] = axis >= legLanesPerWord;
+			legMoveShift[dir] = (axis % legLanesPerWord) * legLaneBits;
+			legMoveStep[dir] = sign;
+
+			if(axis < globalBasis) {
+				globalMoveLanes[dir] = new int[] {axis};
+				globalMoveSteps[dir] = new int[] {sign};
+			}
+			else { //move at 120+j*10 degrees = move at 60+j*10 - move at j*10
+				globalMoveLanes[dir] = new int[] {axis - 6, axis - 12};
+				globalMoveSteps[dir] = new int[] {sign, -sign};
+			}
+		}
+
+		long origin = 0;
+		for(int lane = 0; lane < legLanesPerWord; lane++) origin |= (1L << (legLaneBits - 1)) << (lane * legLaneBits);
+		legStartLo = origin;
+		legStartHi = origin;
+		origin = 0;
+		for(int lane = 0; lane < globalLanesPerWord; lane++) origin |= (1L << (globalLaneBits - 1)) << (lane * globalLaneBits);
+		globalStartLo = origin;
+		globalStartHi = origin;
+	}
+
+	final static byte unseen = 0; //generated but never added to the open set
+	final static byte open = 1;
+	final static byte closed = 2;
+	final static byte inconsistent = 3; //improved after being closed, waits for the next pass of AnytimeSearch
+
+	//node store, indexed by node id, read and written directly by the searches
+	long[] keyLo = new long[1024];
+	long[] keyHi = new long[1024];
+	double[] lng = new double[1024];
+	double[] lat = new double[1024];
+	double[] gScore = new double[1024]; //distance traveled on most efficient path to get to node
+	int[] cameFrom = new int[1024]; //the most efficient node to come from, -1 if none
+	byte[] state = new byte[1024];
+	int nodeCount;
+	final int[] neighbors = new int[directions]; //filled by generateNeighbors, -1 where a move leaves the key range
+	private final double[] neighborLng = new double[directions]; //where each move of validMoves ends
+	private final double[] neighborLat = new double[directions];
+	private final LatticeKeyMap generatedNodes = new LatticeKeyMap(1024); //packed key -> node id
+
+	private EdgeIndex edges;
+	private MoveCache moveCache; //null on the leg lattice
+	private double originLng; //position of the global lattice's zero key
+	private double originLat;
+
+	/*
+	 * Clears the graph and creates the start node
+	 * the global lattice is used if the context has a MoveCache that knows the start point's key, otherwise the leg lattice
+	 * returns the id of the start node
+	 */
+	int reset(Point start, PathContext context) {
+		nodeCount = 0;
+		generatedNodes.clear();
+		edges = context.edges;
+
+		long[] anchor = context.moveCache == null ? null : context.moveCache.anchorOf(start);
+		if(anchor != null) {
+			moveCache = context.moveCache;
+			originLng = moveCache.getOrigin().longitude();
+			originLat = moveCache.getOrigin().latitude();
+			generatedNodes.putIfAbsent(anchor[0], anchor[1], nodeCount);
+			return addNode(anchor[0], anchor[1], start.longitude(), start.latitude());
+		}
+		moveCache = null;
+		generatedNodes.putIfAbsent(legStartLo, legStartHi, nodeCount);
+		return addNode(legStartLo, legStartHi, start.longitude(), start.latitude());
+	}
+
+	boolean isGlobal() {
+		return moveCache != null;
+	}
+
+	/*
+	 * Finds or creates the node one move away from node in every direction and stores them in neighbors
+	 * New nodes start with an infinite gScore and no previous node
+	 */
+	void generateNeighbors(int node) {
+		for(int dir = 0; dir < directions; dir++) {
+			neighbors[dir] = moveCache == null ? legNeighbor(node, dir) : globalNeighbor(node, dir);
+		}
+	}
+
+	private int legNeighbor(int node, int dir) {
+		long lo = keyLo[node];
+		long hi = keyHi[node];
+		long word = legMoveInHigh[dir] ? hi : lo;
+		int mask = (1 << legLaneBits) - 1;
+		int steps = ((int) (word >>> legMoveShift[dir]) & mask) + legMoveStep[dir];
+		if(steps < 0 || steps > mask) return -1; //64 net steps along one axis cannot happen inside the containment area
+
+		long changed = (word & ~((long) mask << legMoveShift[dir])) | ((long) steps << legMoveShift[dir]);
+		if(legMoveInHigh[dir]) hi = changed;
+		else lo = changed;
+
+		int neighbor = generatedNodes.putIfAbsent(lo, hi, nodeCount);
+		if(neighbor >= 0) return neighbor;
+		return addNode(lo, hi, lng[node] + moveLng[dir], lat[node] + moveLat[dir]);
+	}
+
+	private int globalNeighbor(int node, int dir) {
+		long lo = keyLo[node];
+		long hi = keyHi[node];
+		int mask = (1 << globalLaneBits) - 1;
+		var lanes = globalMoveLanes[dir];
+		for(int i = 0; i < lanes.length; i++) {
+			boolean high = lanes[i] >= globalLanesPerWord;
+			int shift = (lanes[i] % globalLanesPerWord) * globalLaneBits;
+			long word = high ? hi : lo;
+			int steps = ((int) (word >>> shift) & mask) + globalMoveSteps[dir][i];
+			if(steps < 0 || steps > mask) return -1; //512 steps along one basis move is far outside the containment area
+			long changed = (word & ~((long) mask << shift)) | ((long) steps << shift);
+			if(high) hi = changed;
+			else lo = changed;
+		}
+
+		int neighbor = generatedNodes.putIfAbsent(lo, hi, nodeCount);
+		if(neighbor >= 0) return neighbor;
+		return addNode(lo, hi, globalLng(lo, hi), globalLat(lo, hi));
+	}
+
+	//position of a global key, the same key always gives exactly the same point
+	private double globalLng(long lo, long hi) {
+		double position = originLng;
+		for(int lane = 0; lane < globalBasis; lane++) position += globalSteps(lo, hi, lane) * moveLng[lane];
+		return position;
+	}
+
+	private double globalLat(long lo, long hi) {
+		double position = originLat;
+		for(int lane = 0; lane < globalBasis; lane++) position += globalSteps(lo, hi, lane) * moveLat[lane];
+		return position;
+	}
+
+	private static int globalSteps(long lo, long hi, int lane) {
+		long word = lane < globalLanesPerWord ? lo : hi;
+		return ((int) (word >>> ((lane % globalLanesPerWord) * globalLaneBits)) & ((1 << globalLaneBits) - 1)) - (1 << (globalLaneBits - 1));
+	}
+
+	/*
+	 * Checks the moves from node to each of its neighbors against the buildings, call after generateNeighbors
+	 * returns a mask with bit d set if the move in direction d is valid
+	 * on the global lattice the mask is read from, or added to, the MoveCache
+	 */
+	long validMoves(int node) {
+		if(moveCache != null) {
+			long cached = moveCache.lookup(keyLo[node], keyHi[node]);
+			if(cached >= 0) return cached;
+		}
+
+		long moves = 0;
+		for(int dir = 0; dir < directions; dir++) {
+			int neighbor = neighbors[dir];
+			if(neighbor < 0) continue;
+			neighborLng[dir] = lng[neighbor];
+			neighborLat[dir] = lat[neighbor];
+			moves |= 1L << dir;
+		}
+		long mask = edges.validMoves(lng[node], lat[node], neighborLng, neighborLat, moves); //all the moves in one pass over the nearby edges
+
+		if(moveCache != null) moveCache.store(keyLo[node], keyHi[node], mask);
+		return mask;
+	}
+
+	private int addNode(long lo, long hi, double nodeLng, double nodeLat) {
+		if(nodeCount == lng.length) grow();
+		int node = nodeCount++;
+		keyLo[node] = lo;
+		keyHi[node] = hi;
+		lng[node] = nodeLng;
+		lat[node] = nodeLat;
+		gScore[node] = Double.POSITIVE_INFINITY;
+		cameFrom[node] = -1;
+		state[node] = unseen;
+		return node;
+	}
+
+	private void grow() {
+		int capacity = lng.length * 2;
+		keyLo = Arrays.copyOf(keyLo, capacity);
+		keyHi = Arrays.copyOf(keyHi, capacity);
+		lng = Arrays.copyOf(lng, capacity);
+		lat = Arrays.copyOf(lat, capacity);
+		gScore = Arrays.copyOf(gScore, capacity);
+		cameFrom = Arrays.copyOf(cameFrom, capacity);
+		state = Arrays.copyOf(state, capacity);
+	}
+
+	/*
+	 * Follows cameFrom back from the final node
+	 * returns the points of the path, start first
+	 * on the global lattice the final point is remembered so a leg starting there stays on the lattice
+	 */
+	ArrayList<Point> pathTo(int last) {
+		int length = 1;
+		for(int node = last; cameFrom[node] != -1; node = cameFrom[node]) length++;
+
+		var points = new Point[length];
+		for(int node = last, i = length - 1; i >= 0; node = cameFrom[node], i--) {
+			points[i] = Point.fromLngLat(lng[node], lat[node]);
+		}
+		if(moveCache != null) moveCache.addAnchor(points[length - 1], keyLo[last], keyHi[last]);
+		return new ArrayList<Point>(Arrays.asList(points));
+	}
+}
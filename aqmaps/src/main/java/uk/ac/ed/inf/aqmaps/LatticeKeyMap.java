@@ -0,0 +1,97 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+
+/*
+ * Open addressing hash map from a packed lattice key (two longs) to a node index
+ * Used by LatticeSearch in place of a Hashtable<List<Integer>, Node>, so lookups never box or copy coordinates
+ * Cleared and reused between searches instead of being reallocated
+ */
+final class LatticeKeyMap {
+	private long[] keysLo; //low word of each stored key
+	private long[] keysHi; //high word of each stored key
+	private int[] values; //stored value + 1 for each slot, 0 marks an empty slot
+	private int mask; //capacity - 1, capacity is always a power of two
+	private int size; //number of keys stored
+
+	public LatticeKeyMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1; //keeps load factor under 0.5
+		allocate(capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Removes all keys, keeping the allocated tables for the next search
+	 */
+	public void clear() {
+		if(size == 0) return;
+		Arrays.fill(values, 0);
+		size = 0;
+	}
+
+	/*
+	 * Returns the value stored for the key, or -1 if there is none
+	 */
+	public int get(long lo, long hi) {
+		for(int slot = hash(lo, hi) & mask; ; slot = (slot + 1) & mask) { //linear probing
+			int value = values[slot];
+			if(value == 0) return -1;
+			if(keysLo[slot] == lo && keysHi[slot] == hi) return value - 1;
+		}
+	}
+
+	/*
+	 * Stores value for the key if the key is not present yet
+	 * returns the value already stored for the key, or -1 if the new value was inserted
+	 */
+	public int putIfAbsent(long lo, long hi, int value) {
+		int slot = hash(lo, hi) & mask;
+		for(; values[slot] != 0; slot = (slot + 1) & mask) {
+			if(keysLo[slot] == lo && keysHi[slot] == hi) return values[slot] - 1;
+		}
+		keysLo[slot] = lo;
+		keysHi[slot] = hi;
+		values[slot] = value + 1;
+		if(++size * 2 > values.length) rehash(); //grows before the table gets half full
+		return -1;
+	}
+
+	/*
+	 * Doubles the table size and reinserts every key
+	 */
+	private void rehash() {
+		var oldLo = keysLo;
+		var oldHi = keysHi;
+		var oldValues = values;
+		allocate(oldValues.length * 2);
+		for(int i = 0; i < oldValues.length; i++) {
+			if(oldValues[i] == 0) continue;
+			int slot = hash(oldLo[i], oldHi[i]) & mask;
+			while(values[slot] != 0) slot = (slot + 1) & mask;
+			keysLo[slot] = oldLo[i];
+			keysHi[slot] = oldHi[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		keysLo = new long[capacity];
+		keysHi = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/*
+	 * Mixes both words of the key so neighboring lattice positions spread over the table
+	 */
+	private static int hash(long lo, long hi) {
+		long h = lo * 0x9E3779B97F4A7C15L + hi;
+		h ^= h >>> 32;
+		h *= 0xBF58476D1CE4E5B9L;
+		h ^= h >>> 29;
+		return (int) h;
+	}
+}
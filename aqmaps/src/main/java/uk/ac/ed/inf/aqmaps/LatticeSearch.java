@@ -0,0 +1,138 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * A* search over a LatticeGraph, used by Path to find the moves of a leg
+ * The open set is an IndexedHeap, so an improved node moves up in place, and open/closed membership is a flag per node
+ * One workspace per thread, reused from one leg to the next, so a search allocates nothing once warmed up
+ */
+final class LatticeSearch {
+
+	final static double fieldWeight = 1.2; //inflation of the cost-to-go field heuristic, enough to break ties between the many equally short lattice paths
+
+	private final static ThreadLocal<LatticeSearch> workspaces = ThreadLocal.withInitial(LatticeSearch::new);
+
+	/*
+	 * returns the search workspace of the calling thread
+	 */
+	static LatticeSearch get() {
+		return workspaces.get();
+	}
+
+	private final LatticeGraph graph = new LatticeGraph();
+	private final IndexedHeap openSet = new IndexedHeap(1024); //nodes to be expanded, keyed by fScore (gScore plus the estimated distance left)
+	private int closedCount;
+
+	private double endLng;
+	private double endLat;
+	private CostFields costFields; //fields of the run, null if the heuristic is the straight line
+	private float[] field; //distances around the buildings to end, null if there is none
+
+	private LatticeSearch() {
+	}
+
+	//sizes of the sets at the end of the last search, reported by Path
+	int getOpenCount() {
+		return openSet.size();
+	}
+
+	int getClosedCount() {
+		return closedCount;
+	}
+
+	int getNodeCount() {
+		return graph.nodeCount;
+	}
+
+	/*
+	 * Finds a path from start to a point within .0002 of end
+	 * returns the points visited, start first, or null if no path exists
+	 */
+	ArrayList<Point> search(Point start, Point end, PathContext context) {
+		int last = run(start, end, context);
+		return last < 0 ? null : graph.pathTo(last);
+	}
+
+	/*
+	 * Runs the search, leaving every node it generated in the graph
+	 * returns the node that got within .0002 of end, or -1 if no path exists
+	 */
+	int run(Point start, Point end, PathContext context) {
+		openSet.clear();
+		closedCount = 0;
+		endLng = end.longitude();
+		endLat = end.latitude();
+		costFields = context.costFields;
+		field = costFields == null ? null : costFields.fieldOf(end);
+
+		var g = graph;
+		int startNode = g.reset(start, context);
+		g.gScore[startNode] = 0.;
+		g.state[startNode] = LatticeGraph.open;
+		openSet.add(startNode, heuristic(g.lng[startNode], g.lat[startNode]));
+
+		while(!openSet.isEmpty()) {
+			int current = openSet.poll(); //takes the node with the least estimated total distance
+
+			if(getEuclid(g.lng[current], g.lat[current]) < .0002 && g.cameFrom[current] != -1) { //if node is within .0002 of target
+				return current;
+			}
+
+			g.generateNeighbors(current);
+			long valid = g.validMoves(current); //which moves avoid the buildings
+
+			for(int dir = 0; dir < LatticeGraph.directions; dir++) {
+				int neighbor = g.neighbors[dir];
+				if(neighbor < 0 || (valid & (1L << dir)) == 0) continue;
+
+				var tentativeGScore = g.gScore[current] + LatticeGraph.moveLength;
+				if(tentativeGScore < g.gScore[neighbor]) { //if the tentative traveled distance of the neighbor is less than the stored value (if any)
+					g.cameFrom[neighbor] = current;
+					g.gScore[neighbor] = tentativeGScore;
+					var fScore = tentativeGScore + heuristic(g.lng[neighbor], g.lat[neighbor]);
+					if(g.state[neighbor] == LatticeGraph.open) {
+						openSet.update(neighbor, fScore); //decrease-key, keeps the heap ordered
+					}
+					else if(g.state[neighbor] == LatticeGraph.unseen) {
+						g.state[neighbor] = LatticeGraph.open;
+						openSet.add(neighbor, fScore);
+					}
+				}
+			}
+			g.state[current] = LatticeGraph.closed; //current has been expanded
+			closedCount++;
+		}
+
+		return -1;
+	}
+
+	//graph of the last run, valid until the next search on this thread
+	LatticeGraph getGraph() {
+		return graph;
+	}
+
+	/*
+	 * Estimates distance to the end from a point
+	 * Set very high so the algorithm behaves in a greedy fashion, saving time at the expense of distance
+	 * With a cost-to-go field the estimate already goes around the buildings, so it is only weighted lightly
+	 */
+	private double heuristic(double pointLng, double pointLat) {
+		if(field != null) {
+			var distance = costFields.distance(field, pointLng, pointLat);
+			if(distance != Double.POSITIVE_INFINITY) return distance * fieldWeight;
+		}
+		return getEuclid(pointLng, pointLat) * 2;
+	}
+	
+	/*
+	 * Euclidean distance from a point to the end of the search
+	 */
+	private double getEuclid(double pointLng, double pointLat) {
+		var latDif = (pointLat - endLat);
+		var longDif = (pointLng - endLng);
+		return Math.sqrt((latDif*latDif) + (longDif*longDif));
+	}
+}
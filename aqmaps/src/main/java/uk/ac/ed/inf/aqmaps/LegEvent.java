@@ -0,0 +1,38 @@
+package uk.ac.ed.inf.aqmaps;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * Java Flight Recorder event for one leg planned by Path, committed only while a recording is running
+ * (for example java -XX:StartFlightRecording=filename=run.jfr ...), so it costs nothing otherwise
+ */
+@Name("uk.ac.ed.inf.aqmaps.Leg")
+@Label("Leg")
+@Category("aqmaps")
+@Description("One leg of a flight planned between two sensors")
+final class LegEvent extends Event {
+
+	@Label("To")
+	@Description("W3W words of the sensor the leg aims for, null for the way back")
+	String to;
+
+	@Label("Search")
+	String search;
+
+	@Label("Moves")
+	@Description("Moves in the leg, -1 if no path was found")
+	int moves;
+
+	@Label("Expansions")
+	int expansions;
+
+	@Label("Open Set")
+	int open;
+
+	@Label("Generated Nodes")
+	int generated;
+}
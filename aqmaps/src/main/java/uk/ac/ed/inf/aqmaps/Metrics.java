@@ -0,0 +1,203 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.stream.JsonWriter;
+
+/*
+ * Where a run spends its time: how long each phase took and how often it ran, how much work the searches did, and every leg planned
+ * Off unless --metrics or --report asks for it. Off, every hook is a read of one static flag, the clock is not even looked at
+ * On, the totals are LongAdders, so the threads planning legs and drones at once never wait on each other
+ * Progress lines (each leg, each heuristic) are printed through progress, only with --verbose
+ * Each leg is also a LegEvent for Java Flight Recorder whenever a recording is running, whatever the options
+ */
+final class Metrics {
+
+	/*
+	 * The parts of a run that are timed
+	 */
+	enum Phase {
+		fetch, //sensor list and W3W locations from the web server
+		geometry, //no-fly-zones fetched and parsed or loaded from the cache, and their EdgeIndex
+		construction, //first visiting order, cheapest insertion or greedy tour
+		twoOpt,
+		swap,
+		localSearch,
+		multiStart,
+		leg //planning one leg, whichever search does it
+	}
+
+	/*
+	 * The work that is counted
+	 */
+	enum Counter {
+		expansions, //nodes the search of each Path leg took off its open set and expanded
+		collisionTests, //moves checked against the building edges
+		heapOperations //adds, polls and key changes on an IndexedHeap
+	}
+
+	final static int maxLegs = 10000; //legs kept for the report, a long running PlannerServer only counts the ones after these
+
+	static boolean enabled = false; //set once by the entry point, before any planning starts
+	static boolean verbose = false;
+
+	private static final LongAdder[] phaseNanos = adders(Phase.values().length);
+	private static final LongAdder[] phaseCalls = adders(Phase.values().length);
+	private static final LongAdder[] counters = adders(Counter.values().length);
+	private static final ConcurrentLinkedQueue<Leg> legs = new ConcurrentLinkedQueue<Leg>();
+	private static final AtomicInteger legsKept = new AtomicInteger(); //size of legs, which the queue itself can only count by walking it
+
+	/*
+	 * One planned leg, for the report
+	 */
+	private static final class Leg {
+		final String to; //W3W words of the sensor, null for the way back
+		final PathContext.Search search;
+		final long nanos;
+		final int moves; //-1 if no path was found
+		final int expansions;
+		final int generated;
+
+		Leg(String to, PathContext.Search search, long nanos, int moves, int expansions, int generated) {
+			this.to = to;
+			this.search = search;
+			this.nanos = nanos;
+			this.moves = moves;
+			this.expansions = expansions;
+			this.generated = generated;
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/*
+	 * turns the metrics and progress lines on or off as the options ask
+	 */
+	static void configure(Options options) {
+		enabled = options.metrics || options.report != null;
+		verbose = options.verbose;
+	}
+
+	/*
+	 * returns the time a phase starts at, to hand to stop, 0 when the metrics are off
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	static void stop(Phase phase, long start) {
+		if(!enabled) return;
+		phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+		phaseCalls[phase.ordinal()].increment();
+	}
+
+	static void count(Counter counter) {
+		if(enabled) counters[counter.ordinal()].increment();
+	}
+
+	static void count(Counter counter, long amount) {
+		if(enabled) counters[counter.ordinal()].add(amount);
+	}
+
+	/*
+	 * records a planned leg: the W3W words it aims for, the search, when it started, its moves (-1 if no path was found),
+	 * and the nodes the search expanded and generated
+	 */
+	static void leg(String to, PathContext.Search search, long start, int moves, int expansions, int generated) {
+		if(!enabled) return;
+		long nanos = System.nanoTime() - start;
+		phaseNanos[Phase.leg.ordinal()].add(nanos);
+		phaseCalls[Phase.leg.ordinal()].increment();
+		counters[Counter.expansions.ordinal()].add(expansions);
+		if(legsKept.getAndUpdate(kept -> Math.min(kept + 1, maxLegs)) < maxLegs) legs.add(new Leg(to, search, nanos, moves, expansions, generated));
+	}
+
+	/*
+	 * forgets everything recorded so far, the options stay as they were configured
+	 */
+	static void reset() {
+		for(LongAdder adder : phaseNanos) adder.reset();
+		for(LongAdder adder : phaseCalls) adder.reset();
+		for(LongAdder adder : counters) adder.reset();
+		legs.clear();
+		legsKept.set(0);
+	}
+
+	/*
+	 * prints a progress line if --verbose asked for them
+	 */
+	static void progress(String line) {
+		if(verbose) System.out.println(line);
+	}
+
+	/*
+	 * returns the phases and counters so far as lines of text, for the end of run report
+	 */
+	static String summary() {
+		var summary = new StringBuilder("Metrics:\n");
+		for(Phase phase : Phase.values()) {
+			long calls = phaseCalls[phase.ordinal()].sum();
+			if(calls > 0) summary.append(String.format("  %-13s %9.1f ms in %d%n", phase, phaseNanos[phase.ordinal()].sum() / 1e6, calls));
+		}
+		for(Counter counter : Counter.values()) summary.append(String.format("  %-15s %d%n", counter, counters[counter.ordinal()].sum()));
+		return summary.toString();
+	}
+
+	/*
+	 * Writes everything recorded as JSON: the run's wall time, then phases (ms and calls), counters, and legs in the order they finished,
+	 * the first maxLegs of them, the phase's calls counting every one
+	 * throws IOException if the file cannot be written
+	 */
+	static void writeReport(String fileName, long runNanos) throws IOException {
+		try(var json = new JsonWriter(Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8))) {
+			json.setIndent("  ");
+			json.beginObject();
+			json.name("wallMs").value(runNanos / 1e6);
+			json.name("phases").beginObject();
+			for(Phase phase : Phase.values()) {
+				json.name(phase.name()).beginObject();
+				json.name("ms").value(phaseNanos[phase.ordinal()].sum() / 1e6);
+				json.name("calls").value(phaseCalls[phase.ordinal()].sum());
+				json.endObject();
+			}
+			json.endObject();
+			json.name("counters").beginObject();
+			for(Counter counter : Counter.values()) json.name(counter.name()).value(counters[counter.ordinal()].sum());
+			json.endObject();
+			json.name("legs").beginArray();
+			for(Leg leg : legs) {
+				json.beginObject();
+				json.name("to").value(leg.to);
+				json.name("search").value(leg.search.name());
+				json.name("ms").value(leg.nanos / 1e6);
+				json.name("moves").value(leg.moves);
+				json.name("expansions").value(leg.expansions);
+				json.name("generated").value(leg.generated);
+				json.endObject();
+			}
+			json.endArray();
+			json.endObject();
+		}
+	}
+
+	/*
+	 * the end of a run: prints the summary if --metrics asked for it and writes the --report file if one was asked for
+	 */
+	static void finish(Options options, long runNanos) throws IOException {
+		if(options.metrics) System.out.print(summary());
+		if(options.report != null) writeReport(options.report, runNanos);
+	}
+
+	private static LongAdder[] adders(int count) {
+		var adders = new LongAdder[count];
+		for(int i = 0; i < count; i++) adders[i] = new LongAdder();
+		return adders;
+	}
+}
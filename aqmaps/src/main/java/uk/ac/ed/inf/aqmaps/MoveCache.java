@@ -0,0 +1,108 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * Run wide cache of which of the 36 moves out of a node of the global lattice are valid
+ * The global lattice is every point reachable from the start point by moves, so a gap between two buildings
+ * that several legs fly through is collision checked once and looked up after that
+ * Safe to use from several threads, the table is split into segments that are locked separately
+ */
+final class MoveCache {
+	private final static int segmentCount = 64; //power of two
+
+	private final Point origin; //point at the zero key of the global lattice
+	private final Segment[] segments = new Segment[segmentCount];
+	private final ConcurrentHashMap<Point, long[]> anchors = new ConcurrentHashMap<Point, long[]>(); //lattice keys of points legs ended on, so the next leg can start from them
+	private final LongAdder hits = new LongAdder(); //moves answered from the cache
+	private final LongAdder misses = new LongAdder(); //moves that had to be collision checked
+
+	public MoveCache(Point origin) {
+		this.origin = origin;
+		for(int i = 0; i < segmentCount; i++) segments[i] = new Segment();
+		anchors.put(origin, new long[] {LatticeGraph.globalStartLo, LatticeGraph.globalStartHi});
+	}
+
+	public Point getOrigin() {
+		return origin;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/*
+	 * returns the packed lattice key of a point a previous leg ended on (or the origin), null if the point is not known to be on the lattice
+	 */
+	long[] anchorOf(Point point) {
+		return anchors.get(point);
+	}
+
+	void addAnchor(Point point, long lo, long hi) {
+		anchors.putIfAbsent(point, new long[] {lo, hi});
+	}
+
+	/*
+	 * returns the validity bit mask of the 36 moves out of the node (bit d set if the move in direction d is valid), or -1 if it is not cached
+	 */
+	long lookup(long lo, long hi) {
+		var segment = segments[segmentOf(lo, hi)];
+		long mask;
+		synchronized(segment) {
+			mask = segment.get(lo, hi);
+		}
+		if(mask < 0) misses.add(LatticeGraph.directions);
+		else hits.add(LatticeGraph.directions);
+		return mask;
+	}
+
+	void store(long lo, long hi, long mask) {
+		var segment = segments[segmentOf(lo, hi)];
+		synchronized(segment) {
+			segment.put(lo, hi, mask);
+		}
+	}
+
+	/*
+	 * Formats the counters for printing at the end of a run
+	 */
+	public String summary() {
+		long hit = getHits(), miss = getMisses();
+		double rate = hit + miss == 0 ? 0 : 100. * hit / (hit + miss);
+		return "Move cache: " + hit + " hits, " + miss + " misses (" + String.format("%.1f", rate) + "% hit rate)";
+	}
+
+	private static int segmentOf(long lo, long hi) {
+		long h = (lo ^ (hi * 0x9E3779B97F4A7C15L)) * 0xC2B2AE3D27D4EB4FL;
+		return (int) (h >>> 58) & (segmentCount - 1);
+	}
+
+	/*
+	 * One lock's worth of the cache, keys map to a slot in masks
+	 */
+	private static final class Segment {
+		private final LatticeKeyMap slots = new LatticeKeyMap(256);
+		private long[] masks = new long[256];
+
+		long get(long lo, long hi) {
+			int slot = slots.get(lo, hi);
+			return slot < 0 ? -1 : masks[slot];
+		}
+
+		void put(long lo, long hi, long mask) {
+			int slot = slots.putIfAbsent(lo, hi, slots.size());
+			if(slot >= 0) return; //another thread stored it first, the mask is the same
+			slot = slots.size() - 1;
+			if(slot == masks.length) masks = Arrays.copyOf(masks, masks.length * 2);
+			masks[slot] = mask;
+		}
+	}
+}
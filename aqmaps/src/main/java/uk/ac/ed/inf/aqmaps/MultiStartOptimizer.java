@@ -0,0 +1,87 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/*
+ * Iterated local search from several starts, run in parallel on the ForkJoin common pool
+ * Each restart kicks its best tour (TourOptimizer.kick), lets TourOptimizer repair it and keeps the result if it is shorter,
+ * restart 0 works from the given tour itself and the others from the given tour scrambled by a burst of kicks first
+ * Every restart draws from its own SplittableRandom split off one seeded generator before any of them start,
+ * so with a kick budget the result depends only on the seed, not on the number of threads or how the restarts are spread over them
+ */
+final class MultiStartOptimizer {
+
+	final static int scrambleDivisor = 10; //a restart other than the first starts from n / scrambleDivisor kicks away from the given tour
+
+	private final TourOptimizer.Distances distances;
+	private final int[][] candidates;
+	private final int[] start;
+
+	/*
+	 * takes the distances, each node's candidate list and the tour to start from, which is not changed
+	 */
+	public MultiStartOptimizer(TourOptimizer.Distances distances, int[][] candidates, int[] start) {
+		this.distances = distances;
+		this.candidates = candidates;
+		this.start = start;
+	}
+
+	/*
+	 * Runs the restarts, each trying up to kicks kicks, stopping early at the deadline (System.nanoTime, 0 for none)
+	 * returns the shortest tour found, the earliest restart's on a tie, never longer than the local optimum of the given tour
+	 * a deadline that cuts the restarts short makes the result depend on timing as well as the seed
+	 */
+	public int[] optimize(long seed, int restarts, int kicks, long deadline) {
+		var root = new SplittableRandom(seed);
+		var randoms = new SplittableRandom[restarts];
+		for(int r = 0; r < restarts; r++) randoms[r] = root.split();
+
+		var tours = IntStream.range(0, restarts).parallel().mapToObj(r -> restart(r, randoms[r], kicks, deadline)).toArray(int[][]::new);
+
+		int best = 0;
+		var bestLength = Double.POSITIVE_INFINITY;
+		for(int r = 0; r < restarts; r++) {
+			var length = length(tours[r]);
+			if(length < bestLength - TourOptimizer.epsilon) {
+				best = r;
+				bestLength = length;
+			}
+		}
+		return tours[best];
+	}
+
+	/*
+	 * One restart: a local optimum near the given tour, then kicks until the budget runs out
+	 */
+	private int[] restart(int index, SplittableRandom random, int kicks, long deadline) {
+		var optimizer = new TourOptimizer(distances, candidates, start);
+		if(index > 0) {
+			for(int k = 0; k < Math.max(1, start.length / scrambleDivisor); k++) optimizer.kick(random);
+		}
+		optimizer.optimize();
+		var best = optimizer.getTour();
+		var bestLength = optimizer.length();
+
+		for(int k = 0; k < kicks; k++) {
+			if(deadline != 0 && System.nanoTime() - deadline > 0) break;
+			optimizer.kick(random);
+			optimizer.improve();
+			var length = optimizer.length();
+			if(length < bestLength - TourOptimizer.epsilon) {
+				best = optimizer.getTour();
+				bestLength = length;
+			}
+			else {
+				optimizer.setTour(best); //back to the best tour for the next kick
+			}
+		}
+		return best;
+	}
+
+	private double length(int[] tour) {
+		double total = 0;
+		for(int i = 0; i < tour.length; i++) total += distances.between(tour[i], tour[(i + 1) % tour.length]);
+		return total;
+	}
+}
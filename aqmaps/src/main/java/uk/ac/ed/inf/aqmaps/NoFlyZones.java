@@ -0,0 +1,299 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.mapbox.geojson.utils.GeoJsonUtils;
+
+/*
+ * The building outlines and the drone containment area as flat primitive arrays, with the bounding box of each polygon
+ * Parsed straight from the no-fly-zones GeoJSON, then saved as a binary file named after a SHA-256 of the GeoJSON,
+ * so a later run with the same buildings memory-maps that file instead of parsing anything
+ * Coordinates are rounded to 7 decimal places on the way in, as writing the features back out as GeoJSON used to do,
+ * so the polygons are exactly the ones the flights were planned around before
+ */
+final class NoFlyZones {
+
+	private final static int magic = 0x41515a31; //"AQZ1", also the format version
+	private final static int digestLength = 32;
+
+	//read by EdgeIndex, CostFields and VisibilityGraph as they are, never changed after construction
+	final int[] starts; //polygon i is vertices starts[i] up to starts[i + 1]
+	final double[] bounds; //minX, minY, maxX, maxY of each polygon
+	final double[] x; //longitude of every vertex
+	final double[] y; //latitude
+
+	private NoFlyZones(int[] starts, double[] bounds, double[] x, double[] y) {
+		this.starts = starts;
+		this.bounds = bounds;
+		this.x = x;
+		this.y = y;
+	}
+
+	/*
+	 * Fetches the no-fly-zones from the server at port, loading them from the cache directory if they have been seen before
+	 * cacheDir is null to always parse and never save
+	 * throws IOException if the request fails, the GeoJSON is not a collection of polygons, or the cache cannot be written
+	 */
+	static NoFlyZones load(String port, String cacheDir) throws IOException {
+		var geoJson = FileManager.getBytesFromURI("http://localhost:" + port + "/buildings/no-fly-zones.geojson");
+		var digest = sha256(geoJson);
+		if(cacheDir == null) return parse(geoJson);
+
+		var file = Paths.get(cacheDir, "no-fly-zones-" + hex(digest, 8) + ".bin");
+		if(Files.exists(file)) {
+			var cached = read(file, digest);
+			if(cached != null) return cached;
+		}
+		var zones = parse(geoJson);
+		zones.write(file, digest);
+		return zones;
+	}
+
+	int getPolygonCount() {
+		return starts.length - 1;
+	}
+
+	/*
+	 * Even-odd ray casting test for a point inside a polygon, points outside its bounding box are turned away first
+	 */
+	boolean inside(int polygon, double px, double py) {
+		if(px < bounds[polygon * 4] || py < bounds[polygon * 4 + 1] || px > bounds[polygon * 4 + 2] || py > bounds[polygon * 4 + 3]) return false;
+		boolean in = false;
+		for(int i = starts[polygon], j = starts[polygon + 1] - 1; i < starts[polygon + 1]; j = i++) {
+			if((y[i] > py) != (y[j] > py) && px < (x[j] - x[i]) * (py - y[i]) / (y[j] - y[i]) + x[i]) in = !in;
+		}
+		return in;
+	}
+
+	/*
+	 * Compares these polygons with an earlier set, vertex by vertex, regardless of their order
+	 * returns the bounding box (minX, minY, maxX, maxY) of every polygon that is in only one of the two sets,
+	 * so added, removed and moved buildings, empty if nothing changed
+	 */
+	List<double[]> changedSince(NoFlyZones before) {
+		var counts = new HashMap<Vertices, Integer>(); //polygon vertices -> how many more times it is here than before
+		for(int p = 0; p < getPolygonCount(); p++) counts.merge(vertices(p), 1, Integer::sum);
+		for(int p = 0; p < before.getPolygonCount(); p++) counts.merge(before.vertices(p), -1, Integer::sum);
+
+		var changed = new ArrayList<double[]>();
+		for(NoFlyZones zones : new NoFlyZones[] {this, before}) {
+			int sign = zones == this ? 1 : -1;
+			for(int p = 0; p < zones.getPolygonCount(); p++) {
+				var key = zones.vertices(p);
+				if(counts.get(key) * sign <= 0) continue;
+				counts.merge(key, -sign, Integer::sum); //each extra copy is reported once
+				changed.add(Arrays.copyOfRange(zones.bounds, p * 4, p * 4 + 4));
+			}
+		}
+		return changed;
+	}
+
+	private Vertices vertices(int polygon) {
+		int count = starts[polygon + 1] - starts[polygon];
+		var xy = new double[count * 2];
+		System.arraycopy(x, starts[polygon], xy, 0, count);
+		System.arraycopy(y, starts[polygon], xy, count, count);
+		return new Vertices(xy);
+	}
+
+	//the x then the y of every vertex of a polygon, compared by value
+	private static final class Vertices {
+		private final double[] xy;
+
+		Vertices(double[] xy) {
+			this.xy = xy;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Vertices && Arrays.equals(xy, ((Vertices) other).xy);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(xy);
+		}
+	}
+
+	/*
+	 * takes vertex lists, each a polygon, used as they are (neither rounded nor given a containment area)
+	 */
+	static NoFlyZones of(List<double[][]> rings) {
+		return flatten(rings, false);
+	}
+
+	/*
+	 * Reads the outer ring of every polygon (every part of a multipolygon) and adds the containment area after them
+	 */
+	static NoFlyZones parse(byte[] geoJson) throws IOException {
+		var rings = new ArrayList<double[][]>();
+		JsonElement root;
+		try {
+			root = JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(geoJson), StandardCharsets.UTF_8));
+		}
+		catch(JsonParseException e) {
+			throw new IOException("Malformed no-fly-zones GeoJSON", e);
+		}
+		for(JsonElement feature : array(object(root, "the collection").get("features"), "features")) {
+			var geometry = object(object(feature, "a feature").get("geometry"), "a feature's geometry");
+			var type = geometry.get("type");
+			if(type == null || !type.isJsonPrimitive() || !type.getAsJsonPrimitive().isString()) throw new IOException("Malformed no-fly-zones GeoJSON: a geometry has no type");
+			var coordinates = array(geometry.get("coordinates"), "a geometry's coordinates");
+			if(type.getAsString().equals("Polygon")) rings.add(ring(coordinates));
+			else if(type.getAsString().equals("MultiPolygon")) {
+				for(JsonElement polygon : coordinates) rings.add(ring(array(polygon, "a polygon")));
+			}
+			else throw new IOException("No-fly zone is a " + type.getAsString() + ", expected a Polygon");
+		}
+		rings.add(new double[][] { //the drone containment area, after the buildings
+			{FileManager.minLon, FileManager.minLat}, {FileManager.maxLon, FileManager.minLat}, {FileManager.maxLon, FileManager.maxLat},
+			{FileManager.minLon, FileManager.maxLat}, {FileManager.minLon, FileManager.minLat}});
+		return flatten(rings, true);
+	}
+
+	//the rings as flat arrays with their bounding boxes, trim rounds every coordinate to 7 decimal places
+	private static NoFlyZones flatten(List<double[][]> rings, boolean trim) {
+		int vertexCount = 0;
+		for(double[][] ring : rings) vertexCount += ring.length;
+		var starts = new int[rings.size() + 1];
+		var bounds = new double[rings.size() * 4];
+		var x = new double[vertexCount];
+		var y = new double[vertexCount];
+		int next = 0;
+		for(int p = 0; p < rings.size(); p++) {
+			starts[p] = next;
+			double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			for(double[] vertex : rings.get(p)) {
+				x[next] = trim ? GeoJsonUtils.trim(vertex[0]) : vertex[0];
+				y[next] = trim ? GeoJsonUtils.trim(vertex[1]) : vertex[1];
+				minX = Math.min(minX, x[next]);
+				minY = Math.min(minY, y[next]);
+				maxX = Math.max(maxX, x[next]);
+				maxY = Math.max(maxY, y[next]);
+				next++;
+			}
+			bounds[p * 4] = minX;
+			bounds[p * 4 + 1] = minY;
+			bounds[p * 4 + 2] = maxX;
+			bounds[p * 4 + 3] = maxY;
+		}
+		starts[rings.size()] = next;
+		return new NoFlyZones(starts, bounds, x, y);
+	}
+
+	//the [lng, lat] pairs of the outer ring of a polygon's rings
+	private static double[][] ring(JsonArray rings) throws IOException {
+		if(rings.size() == 0) throw new IOException("Malformed no-fly-zones GeoJSON: a polygon has no rings");
+		var positions = array(rings.get(0), "a ring");
+		var ring = new double[positions.size()][];
+		for(int v = 0; v < ring.length; v++) {
+			var position = array(positions.get(v), "a position");
+			if(position.size() < 2) throw new IOException("Malformed no-fly-zones GeoJSON: a position has " + position.size() + " coordinates");
+			ring[v] = new double[] {number(position.get(0)), number(position.get(1))};
+		}
+		return ring;
+	}
+
+	//the element as an object, what names it in the error if it is missing or something else
+	private static JsonObject object(JsonElement element, String what) throws IOException {
+		if(element == null || !element.isJsonObject()) throw new IOException("Malformed no-fly-zones GeoJSON: expected " + what + " as an object");
+		return element.getAsJsonObject();
+	}
+
+	private static JsonArray array(JsonElement element, String what) throws IOException {
+		if(element == null || !element.isJsonArray()) throw new IOException("Malformed no-fly-zones GeoJSON: expected " + what + " as an array");
+		return element.getAsJsonArray();
+	}
+
+	private static double number(JsonElement element) throws IOException {
+		if(!element.isJsonPrimitive() || !element.getAsJsonPrimitive().isNumber()) throw new IOException("Malformed no-fly-zones GeoJSON: expected a coordinate, got " + element);
+		return element.getAsDouble();
+	}
+
+	/*
+	 * Saves the arrays: magic, digest of the GeoJSON, polygon and vertex counts, then starts, bounds, x and y
+	 * written to a temporary file first and moved into place, so a crash never leaves a half written cache under the real name
+	 */
+	private void write(java.nio.file.Path file, byte[] digest) throws IOException {
+		int polygons = getPolygonCount();
+		var buffer = ByteBuffer.allocate(4 + digestLength + 4 + 4 + (polygons + 1) * 4 + (bounds.length + x.length + y.length) * 8);
+		buffer.putInt(magic);
+		buffer.put(digest);
+		buffer.putInt(polygons);
+		buffer.putInt(x.length);
+		buffer.asIntBuffer().put(starts);
+		buffer.position(buffer.position() + starts.length * 4);
+		for(double[] array : new double[][] {bounds, x, y}) {
+			buffer.asDoubleBuffer().put(array);
+			buffer.position(buffer.position() + array.length * 8);
+		}
+		buffer.flip();
+
+		var temp = Files.createTempFile(file.toAbsolutePath().getParent(), "no-fly-zones", ".tmp");
+		try(var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			while(buffer.hasRemaining()) channel.write(buffer);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Memory-maps a saved file
+	 * returns null if it is not one, or was saved for different GeoJSON, so it is parsed and saved again
+	 */
+	private static NoFlyZones read(java.nio.file.Path file, byte[] digest) throws IOException {
+		try(var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.remaining() < 4 + digestLength + 8 || buffer.getInt() != magic) return null;
+			var saved = new byte[digestLength];
+			buffer.get(saved);
+			if(!Arrays.equals(saved, digest)) return null;
+			int polygons = buffer.getInt(), vertices = buffer.getInt();
+			if(polygons < 0 || vertices < 0 || buffer.remaining() != (polygons + 1) * 4L + (polygons * 4L + vertices * 2L) * 8) return null;
+
+			var starts = new int[polygons + 1];
+			buffer.asIntBuffer().get(starts);
+			buffer.position(buffer.position() + starts.length * 4);
+			var arrays = new double[][] {new double[polygons * 4], new double[vertices], new double[vertices]};
+			for(double[] array : arrays) {
+				buffer.asDoubleBuffer().get(array);
+				buffer.position(buffer.position() + array.length * 8);
+			}
+			return new NoFlyZones(starts, arrays[0], arrays[1], arrays[2]);
+		}
+	}
+
+	private static byte[] sha256(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is missing", e); //every Java platform has to provide it
+		}
+	}
+
+	private static String hex(byte[] bytes, int count) {
+		var text = new StringBuilder();
+		for(int i = 0; i < count; i++) text.append(String.format("%02x", bytes[i]));
+		return text.toString();
+	}
+}
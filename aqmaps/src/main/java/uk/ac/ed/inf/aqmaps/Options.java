@@ -0,0 +1,177 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+
+/*
+ * Optional command line flags, given after the positional arguments as --name or --name=value
+ */
+public class Options {
+	boolean globalLattice = false; //plans every leg on one lattice anchored at the start point, caching move validity across legs
+	boolean parallelLegs = false; //plans all legs at once from predicted start points, then stitches them together
+	boolean localSearch = false; //improves the visiting order with TourOptimizer instead of twoOptHeuristic and swapHeuristic
+	boolean visibilityDistances = false; //--distances=visibility orders the sensors by distances around the buildings, --distances=euclid (the default) by straight lines
+	ArrayList<double[]> drones = new ArrayList<double[]>(); //--drone=LAT,LNG, once per drone besides the one at the start position given positionally, {lat, lng}
+	boolean orienteering = false; //visits only as many sensors as fit in the move limit, including the way back, instead of cutting the flight off
+	int fetchConcurrency = FileManager.defaultConcurrency; //W3W lookups in flight at once while fetching the sensors
+	String wordsCache = "words-cache.bin"; //file What3Words locations are kept in between runs, --words-cache=off to always ask the server
+	String zonesCache = "."; //directory the parsed no-fly-zones are saved in, keyed by a hash of the GeoJSON, --zones-cache=off to parse every run
+	boolean sparse = false; //orders the sensors from nearest neighbor lists instead of a full distance table, for many thousands of sensors
+	boolean costFields = false; //A* aims by distances around the buildings to each sensor, worked out before any leg is planned, --search=astar only
+	PathContext.Search search = PathContext.Search.astar; //--search=astar, bidirectional or anytime
+	long legBudgetMs = 100; //time --search=anytime may spend improving one leg, 0 for no limit
+	long runBudgetMs = 0; //time the whole run may take, shared out between the legs left by --search=anytime, 0 for no limit
+	int restarts = 0; //restarts of the seeded multi-start search over the visiting order, 0 to skip it
+	int kicks = 200; //kicks each multi-start restart tries
+	long orderBudgetMs = 0; //time the multi-start search may take, 0 for no limit, a limit makes the order depend on timing as well as the seed
+	boolean verbose = false; //prints a line for every leg planned and every ordering heuristic run
+	boolean metrics = false; //prints the time each phase took and the work the searches did at the end of the run
+	String report = null; //file to write the metrics as JSON to, with every leg, null for none
+	int workers = Runtime.getRuntime().availableProcessors(); //days BatchPlanner, or requests PlannerServer, plans at once
+	int queue = 16; //plan requests PlannerServer holds waiting for a worker, more are turned away with 503
+
+	/*
+	 * takes the command line arguments and the index of the first optional one
+	 * returns the parsed options, throws IllegalArgumentException on anything it does not recognise
+	 */
+	public static Options parse(String[] args, int first) {
+		var options = new Options();
+		for(int i = first; i < args.length; i++) {
+			var arg = args[i];
+			if(!arg.startsWith("--")) throw new IllegalArgumentException("Unexpected argument: " + arg);
+			
+			int split = arg.indexOf('=');
+			var name = split < 0 ? arg.substring(2) : arg.substring(2, split);
+			var value = split < 0 ? null : arg.substring(split + 1);
+			
+			switch(name) {
+			case "global-lattice":
+				options.globalLattice = true;
+				break;
+			case "parallel-legs":
+				options.parallelLegs = true;
+				break;
+			case "drone":
+				options.drones.add(parsePosition(arg, value));
+				break;
+			case "orienteering":
+				options.orienteering = true;
+				break;
+			case "fetch-concurrency":
+				options.fetchConcurrency = parseCount(arg, value);
+				if(options.fetchConcurrency == 0) throw new IllegalArgumentException("Expected at least one request at a time: " + arg);
+				break;
+			case "words-cache":
+				if(value == null || value.isEmpty()) throw new IllegalArgumentException("Expected a file name or off: " + arg);
+				options.wordsCache = value.equals("off") ? null : value;
+				break;
+			case "zones-cache":
+				if(value == null || value.isEmpty()) throw new IllegalArgumentException("Expected a directory or off: " + arg);
+				options.zonesCache = value.equals("off") ? null : value;
+				break;
+			case "sparse":
+				options.sparse = true;
+				break;
+			case "cost-fields":
+				options.costFields = true;
+				break;
+			case "local-search":
+				options.localSearch = true;
+				break;
+			case "distances":
+				if("visibility".equals(value)) options.visibilityDistances = true;
+				else if("euclid".equals(value)) options.visibilityDistances = false;
+				else throw new IllegalArgumentException("Unknown distances, expected euclid or visibility: " + arg);
+				break;
+			case "search":
+				try {
+					options.search = PathContext.Search.valueOf(String.valueOf(value));
+				}
+				catch(IllegalArgumentException e) {
+					throw new IllegalArgumentException("Unknown search, expected astar, bidirectional or anytime: " + arg);
+				}
+				break;
+			case "leg-budget-ms":
+				options.legBudgetMs = parseMillis(arg, value);
+				break;
+			case "run-budget-ms":
+				options.runBudgetMs = parseMillis(arg, value);
+				break;
+			case "restarts":
+				options.restarts = parseCount(arg, value);
+				break;
+			case "kicks":
+				options.kicks = parseCount(arg, value);
+				break;
+			case "order-budget-ms":
+				options.orderBudgetMs = parseMillis(arg, value);
+				break;
+			case "verbose":
+				options.verbose = true;
+				break;
+			case "metrics":
+				options.metrics = true;
+				break;
+			case "report":
+				if(value == null || value.isEmpty()) throw new IllegalArgumentException("Expected a file name: " + arg);
+				options.report = value;
+				break;
+			case "workers":
+				options.workers = parseCount(arg, value);
+				if(options.workers == 0) throw new IllegalArgumentException("Expected at least one worker: " + arg);
+				break;
+			case "queue":
+				options.queue = parseCount(arg, value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		if(options.sparse && options.visibilityDistances) throw new IllegalArgumentException("--sparse orders by straight lines, it cannot be used with --distances=visibility");
+		if(options.costFields && options.search != PathContext.Search.astar) throw new IllegalArgumentException("Only --search=astar aims by the cost fields, --cost-fields cannot be used with --search=" + options.search);
+		return options;
+	}
+
+	/*
+	 * returns the value of a time option, throws IllegalArgumentException if it is missing, negative or not a number
+	 */
+	private static long parseMillis(String arg, String value) {
+		long millis;
+		try {
+			millis = Long.parseLong(String.valueOf(value));
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a number of milliseconds: " + arg);
+		}
+		if(millis < 0) throw new IllegalArgumentException("Expected a number of milliseconds: " + arg);
+		return millis;
+	}
+
+	/*
+	 * returns the LAT,LNG value of a position option as {lat, lng}, throws IllegalArgumentException if it is not two numbers
+	 */
+	private static double[] parsePosition(String arg, String value) {
+		var parts = String.valueOf(value).split(",");
+		if(parts.length != 2) throw new IllegalArgumentException("Expected LAT,LNG: " + arg);
+		try {
+			return new double[] {Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim())};
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Expected LAT,LNG: " + arg);
+		}
+	}
+
+	/*
+	 * returns the value of a count option, throws IllegalArgumentException if it is missing, negative or not a number
+	 */
+	private static int parseCount(String arg, String value) {
+		int count;
+		try {
+			count = Integer.parseInt(String.valueOf(value));
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a whole number: " + arg);
+		}
+		if(count < 0) throw new IllegalArgumentException("Expected a whole number: " + arg);
+		return count;
+	}
+}
@@ -0,0 +1,163 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * Chooses which sensors to visit, and in what order, so the whole flight including the way back fits in App.maxMoves
+ * instead of planning every sensor and cutting the flight off when the moves run out
+ *
+ * Works from an estimate of the moves each leg takes: the straight line (or around the buildings) distance over the move length,
+ * scaled by how much longer the legs planned so far really were. Sensors are dropped from the tour, the one whose
+ * removal saves the most moves first, until the estimate fits, then dropped sensors are put back wherever they fit cheapest.
+ * The chosen tour is then planned for real with Path, the real move counts of its legs replace their estimates,
+ * and the choice is made again, until the real flight fits and choosing again changes nothing
+ */
+final class OrienteeringPlanner {
+
+	final static double moveLength = .0003;
+	final static double reach = .0002; //a leg ends within this of its sensor, so it saves this much of the distance
+	final static int maxRounds = 8; //real plannings before settling for the best flight that fits
+
+	private final ArrayList<SensorNode> sensorNodeList;
+	private final TourOptimizer.Distances distances;
+	private final PathContext context;
+	private final Options options;
+	private final HashMap<Long, Integer> realMoves = new HashMap<Long, Integer>(); //from * n + to -> moves the leg really took
+	private double realTotal; //moves of every leg planned so far, and their estimates, for scaling the estimates
+	private double estimatedTotal;
+
+	/*
+	 * takes the sensors (start node first), the distances between them, the run's PathContext and the command line options
+	 */
+	OrienteeringPlanner(ArrayList<SensorNode> sensorNodeList, TourOptimizer.Distances distances, PathContext context, Options options) {
+		this.sensorNodeList = sensorNodeList;
+		this.distances = distances;
+		this.context = context;
+		this.options = options;
+	}
+
+	/*
+	 * takes the order to visit every sensor in, start node first
+	 * returns the Plan of a flight that visits as many of them as fit in App.maxMoves and ends back at the start
+	 */
+	Replanner.Plan plan(ArrayList<Integer> fullOrder) {
+		var order = new ArrayList<Integer>(fullOrder);
+		ArrayList<Path> best = null;
+		ArrayList<Integer> bestOrder = null;
+		int bestSensors = -1;
+
+		for(int round = 0; round < maxRounds; round++) {
+			choose(order, fullOrder);
+			var paths = App.planPaths(sensorNodeList, order, context, options);
+			int total = record(order, paths);
+			if(Metrics.verbose) Metrics.progress("Orienteering round " + round + ": " + (order.size() - 1) + " sensors in " + total + " moves");
+
+			if(total <= App.maxMoves && order.size() - 1 > bestSensors) {
+				best = paths;
+				bestOrder = new ArrayList<Integer>(order);
+				bestSensors = order.size() - 1;
+			}
+			if(total <= App.maxMoves && !choose(new ArrayList<Integer>(order), fullOrder)) break; //fits and the estimates would not change the choice
+		}
+
+		while(best == null) { //the estimates never fitted, drops sensors one at a time until the real flight does
+			if(order.size() > 2) drop(order);
+			var paths = App.planPaths(sensorNodeList, order, context, options);
+			if(record(order, paths) <= App.maxMoves || order.size() <= 2) { //a single sensor is flown even if it does not fit, App cuts it off
+				best = paths;
+				bestOrder = order;
+			}
+		}
+		return new Replanner.Plan(sensorNodeList, bestOrder, best);
+	}
+
+	/*
+	 * Drops sensors from order until its estimate fits, then puts back any sensor of fullOrder that still fits
+	 * returns whether order changed
+	 */
+	private boolean choose(ArrayList<Integer> order, ArrayList<Integer> fullOrder) {
+		var before = new ArrayList<Integer>(order);
+		while(order.size() > 2 && estimate(order) > App.maxMoves) drop(order);
+
+		var left = new ArrayList<Integer>(fullOrder);
+		left.removeAll(order);
+		while(!left.isEmpty()) {
+			int total = estimate(order);
+			int bestNode = -1, bestSlot = -1, bestCost = Integer.MAX_VALUE;
+			for(int node : left) {
+				for(int slot = 0; slot < order.size(); slot++) {
+					int a = order.get(slot), b = order.get((slot + 1) % order.size());
+					int cost = moves(a, node) + moves(node, b) - moves(a, b);
+					if(cost < bestCost) {
+						bestNode = node;
+						bestSlot = slot;
+						bestCost = cost;
+					}
+				}
+			}
+			if(total + bestCost > App.maxMoves) break;
+			order.add(bestSlot + 1, bestNode);
+			left.remove(Integer.valueOf(bestNode));
+		}
+		return !order.equals(before);
+	}
+
+	//removes the sensor, never the start node, whose removal saves the most estimated moves
+	private void drop(ArrayList<Integer> order) {
+		int bestSlot = -1, bestSaving = Integer.MIN_VALUE;
+		for(int slot = 1; slot < order.size(); slot++) {
+			int a = order.get(slot - 1), node = order.get(slot), b = order.get((slot + 1) % order.size());
+			int saving = moves(a, node) + moves(node, b) - moves(a, b);
+			if(saving > bestSaving) {
+				bestSlot = slot;
+				bestSaving = saving;
+			}
+		}
+		order.remove(bestSlot);
+	}
+
+	//estimated moves of the whole closed tour
+	private int estimate(ArrayList<Integer> order) {
+		int total = 0;
+		for(int i = 0; i < order.size(); i++) total += moves(order.get(i), order.get((i + 1) % order.size()));
+		return total;
+	}
+
+	/*
+	 * Moves from sensor a to sensor b: the real count if the leg was planned before, otherwise the estimate
+	 * a leg always takes at least one move
+	 */
+	private int moves(int a, int b) {
+		var real = realMoves.get(key(a, b));
+		if(real != null) return real;
+		var scale = estimatedTotal > 0 ? realTotal / estimatedTotal : 1;
+		return Math.max(1, (int) Math.ceil(rawEstimate(a, b) * scale));
+	}
+
+	private double rawEstimate(int a, int b) {
+		return Math.max(0, distances.between(a, b) - reach) / moveLength;
+	}
+
+	/*
+	 * Remembers the real move count of every leg of a planned flight
+	 * returns the moves of the whole flight
+	 */
+	private int record(ArrayList<Integer> order, ArrayList<Path> paths) {
+		int total = 0;
+		for(int i = 0; i < paths.size(); i++) {
+			int a = order.get(i), b = order.get((i + 1) % order.size());
+			int count = paths.get(i).getMoveCount();
+			if(realMoves.put(key(a, b), count) == null) {
+				realTotal += count;
+				estimatedTotal += rawEstimate(a, b);
+			}
+			total += count;
+		}
+		return total;
+	}
+
+	private long key(int a, int b) {
+		return (long) a * sensorNodeList.size() + b;
+	}
+}
@@ -0,0 +1,158 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * Plans the legs of a tour at the same time instead of one after another
+ *
+ * A leg starts wherever the previous leg ended, which is only known once that leg has been planned.
+ * So first every leg is searched backwards on the ForkJoin common pool, from its sensor towards the previous sensor (the predicted start),
+ * keeping the tree of moves the search found around the predicted start.
+ * Then the legs are stitched together in order: the cheapest tree node within .0002 of the real start is picked and its moves
+ * towards the sensor are replayed from the real start, shifted by that small offset, so the leg still ends within .0002 of its sensor.
+ * Every shifted move is checked against the buildings again, and a leg that cannot be stitched is planned again from the real start,
+ * so the flight path is just as valid and contiguous as one planned sequentially.
+ */
+final class ParallelLegPlanner {
+
+	final static double reach = .0002; //how close a leg has to end to its sensor
+
+	/*
+	 * takes the sensors, the order to visit them in (start node first) and the run's PathContext
+	 * returns one Path per leg, including the one back to the start
+	 */
+	static ArrayList<Path> plan(ArrayList<SensorNode> sensorNodeList, ArrayList<Integer> order, PathContext context) {
+		int legCount = order.size();
+		var targets = new Point[legCount + 1]; //targets[i] is where leg i - 1 aims, targets[0] is the start point
+		var words = new String[legCount + 1];
+		for(int i = 0; i <= legCount; i++) {
+			var node = sensorNodeList.get(order.get(i % legCount));
+			targets[i] = Point.fromLngLat(node.getLng(), node.getLat());
+			words[i] = node.getLocation();
+		}
+
+		//the first leg starts exactly at the start point, every other leg gets a tree around its predicted start
+		var firstLeg = new Path[1];
+		var trees = IntStream.range(0, legCount).parallel().mapToObj(i -> {
+			if(i == 0) {
+				firstLeg[0] = new Path(targets[0], targets[1], words[1], context);
+				return null;
+			}
+			return MoveTree.plant(targets[i + 1], targets[i], context);
+		}).toArray(MoveTree[]::new);
+
+		var fullPath = new ArrayList<Path>(legCount);
+		fullPath.add(firstLeg[0]);
+		int stitched = 0;
+		for(int i = 1; i < legCount; i++) {
+			var start = fullPath.get(i - 1).getActualEndPoint(); //where the drone really is
+			var points = trees[i] == null ? null : trees[i].stitch(start, context.edges);
+			if(points != null) {
+				fullPath.add(new Path(points, targets[i + 1], words[i + 1], context));
+				stitched++;
+			}
+			else {
+				fullPath.add(new Path(start, targets[i + 1], words[i + 1], context)); //prediction did not hold, plan from the real start
+			}
+		}
+
+		System.out.println("Parallel legs: " + stitched + " of " + (legCount - 1) + " stitched from speculative plans, " + (legCount - 1 - stitched) + " replanned");
+		return fullPath;
+	}
+
+	/*
+	 * Moves found by a backward search from a sensor, as a tree rooted at the sensor
+	 * every node can follow next[] to the sensor using valid moves
+	 */
+	private static final class MoveTree {
+		private final double[] lng;
+		private final double[] lat;
+		private final int[] next; //node one move closer to the sensor, -1 at the sensor itself
+		private final int[] candidates; //nodes near the predicted start, fewest moves to the sensor first
+
+		private MoveTree(double[] lng, double[] lat, int[] next, int[] candidates) {
+			this.lng = lng;
+			this.lat = lat;
+			this.next = next;
+			this.candidates = candidates;
+		}
+
+		/*
+		 * Searches from the sensor towards the predicted start and keeps every reached node within 2 * reach of the predicted start
+		 * (a real start is within reach of the predicted one, and a usable node within reach of the real start)
+		 * returns null if the search found no path
+		 */
+		static MoveTree plant(Point sensor, Point predictedStart, PathContext context) {
+			var search = LatticeSearch.get();
+			if(search.run(sensor, predictedStart, new PathContext(context.edges, null, PathContext.Search.astar, null, context.costFields)) < 0) return null; //starts off the global lattice, so no MoveCache
+
+			var graph = search.getGraph();
+			var index = new int[graph.nodeCount]; //graph node -> tree node, -1 if not in the tree
+			Arrays.fill(index, -1);
+			var nodes = new ArrayList<Integer>(); //graph nodes in the tree
+			var picked = new ArrayList<Integer>(); //graph nodes that are candidates
+
+			double limit = 2 * reach;
+			for(int node = 0; node < graph.nodeCount; node++) {
+				if(graph.cameFrom[node] == -1) continue; //unreached, or the sensor itself
+				var dLng = graph.lng[node] - predictedStart.longitude();
+				var dLat = graph.lat[node] - predictedStart.latitude();
+				if(dLng * dLng + dLat * dLat >= limit * limit) continue;
+				picked.add(node);
+				for(int n = node; n != -1 && index[n] < 0; n = graph.cameFrom[n]) { //adds the chain back to the sensor
+					index[n] = nodes.size();
+					nodes.add(n);
+				}
+			}
+
+			var lng = new double[nodes.size()];
+			var lat = new double[nodes.size()];
+			var next = new int[nodes.size()];
+			for(int i = 0; i < nodes.size(); i++) {
+				int node = nodes.get(i);
+				lng[i] = graph.lng[node];
+				lat[i] = graph.lat[node];
+				next[i] = graph.cameFrom[node] == -1 ? -1 : index[graph.cameFrom[node]];
+			}
+			picked.sort((a, b) -> Double.compare(graph.gScore[a], graph.gScore[b]));
+			var candidates = picked.stream().mapToInt(node -> index[node]).toArray();
+			return new MoveTree(lng, lat, next, candidates);
+		}
+
+		/*
+		 * Replays the moves of the cheapest usable candidate from the real start
+		 * returns the points of the leg, start first, or null if no candidate is close enough and stays clear of the buildings
+		 */
+		ArrayList<Point> stitch(Point start, EdgeIndex edges) {
+			for(int candidate : candidates) {
+				var shiftLng = start.longitude() - lng[candidate];
+				var shiftLat = start.latitude() - lat[candidate];
+				if(shiftLng * shiftLng + shiftLat * shiftLat >= reach * reach) continue;
+
+				var points = new ArrayList<Point>();
+				points.add(start);
+				double fromLng = start.longitude(), fromLat = start.latitude();
+				int node = next[candidate];
+				for(; node != -1; node = next[node]) {
+					double toLng = lng[node] + shiftLng, toLat = lat[node] + shiftLat;
+					if(!edges.isValidMove(fromLng, fromLat, toLng, toLat)) break;
+					points.add(Point.fromLngLat(toLng, toLat));
+					fromLng = toLng;
+					fromLat = toLat;
+				}
+				if(node != -1) continue; //a shifted move touches a building
+
+				int sensor = candidate;
+				while(next[sensor] != -1) sensor = next[sensor];
+				var endLng = fromLng - lng[sensor];
+				var endLat = fromLat - lat[sensor];
+				if(Math.sqrt((endLat*endLat) + (endLng*endLng)) < reach) return points; //same check the search ends on
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package uk.ac.ed.inf.aqmaps;
+
+/*
+ * Everything a Path needs that is built once per run and shared by every leg
+ */
+final class PathContext {
+
+	/*
+	 * Which search plans each leg
+	 */
+	enum Search {
+		astar, //forward A* with the fixed 2x heuristic, LatticeSearch
+		bidirectional, //from both ends of the leg, BidirectionalSearch
+		anytime //weight lowered until the time budget runs out, AnytimeSearch
+	}
+
+	final EdgeIndex edges; //grid of building edges
+	final MoveCache moveCache; //move validity on the global lattice, null when every leg searches its own lattice
+	final Search search;
+	final SearchBudget budget; //time the anytime search may take, null if the search is not anytime
+	final CostFields costFields; //distances around the buildings to every sensor, used as LatticeSearch's heuristic, null to use straight lines
+
+	public PathContext(EdgeIndex edges, MoveCache moveCache) {
+		this(edges, moveCache, Search.astar, null, null);
+	}
+
+	public PathContext(EdgeIndex edges, MoveCache moveCache, Search search, SearchBudget budget, CostFields costFields) {
+		this.edges = edges;
+		this.moveCache = moveCache;
+		this.search = search;
+		this.budget = budget;
+		this.costFields = costFields;
+	}
+}
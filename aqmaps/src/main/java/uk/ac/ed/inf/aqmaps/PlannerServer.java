@@ -0,0 +1,507 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Long running planner behind a local HTTP API, so a mission pays for planning only:
+ * the buildings are fetched, parsed and indexed once at start up, and the HTTP client, the W3W location cache and the JIT stay warm
+ *
+ * POST /plan with {"date": "DD-MM-YYYY", "lat": .., "lng": .., "seed": .., "drones": [[lat, lng], ..]} (drones optional)
+ * answers {"date", "moves", "planMs", "planId", "flightpaths": [one flightpath file per drone, as text], "readings": the readings GeoJSON}
+ * POST /replan with {"planId": .., "add": [{"location": W3W, "battery": .., "reading": ..}, ..], "remove": [W3W, ..], "zones": no-fly-zones GeoJSON}
+ * (all but planId optional, zones replacing the buildings) repairs that plan with Replanner instead of planning the day again, each added sensor
+ * going to the drone with a node nearest it, and answers as /plan with a new planId, the "kept", "shifted" and "replanned" legs
+ * and the sensors "dropped" so each flight still fits in App.maxMoves
+ * GET /health answers 200 with the number of requests planning and waiting
+ *
+ * --workers requests are planned at once and --queue more wait for a worker, anything past that is answered 503 at once
+ * rather than queued without limit, so a client can back off and try again. Every request is planned with the command line's --flags
+ * --metrics and --report add up every request, printed and written when the server shuts down
+ * The last keptPlans plans are kept for /replan, an older planId is answered 404
+ *
+ * Arguments: PORT WEBSERVER_PORT [--flags], listening on localhost only
+ */
+public class PlannerServer {
+
+	final static DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd-MM-uuuu").withResolverStyle(ResolverStyle.STRICT); //31-02 is an error, not 28-02
+	final static int retryAfterSeconds = 1; //sent with 503
+	final static int keptPlans = 64; //plans /replan can still repair
+
+	private final static Gson gson = new Gson();
+
+	/*
+	 * Body of POST /plan
+	 */
+	static final class PlanRequest {
+		String date;
+		Double lat;
+		Double lng;
+		Integer seed;
+		double[][] drones; //{lat, lng} of each drone besides the first, null for one drone
+	}
+
+	/*
+	 * Body of POST /replan
+	 */
+	static final class ReplanRequest {
+		String planId;
+		SensorNode[] add; //W3W location, battery and reading of each, null for none
+		String[] remove; //W3W locations, null for none
+		JsonObject zones; //the no-fly-zones GeoJSON now, null if the buildings did not change
+	}
+
+	/*
+	 * A plan answered to a client, with what /replan needs to repair it
+	 */
+	private static final class Mission {
+		final String date;
+		final String day;
+		final String month;
+		final String year;
+		final List<SensorNode> sensors; //in the order of the readings file
+		final List<Replanner.Plan> plans; //one per drone
+		final NoFlyZones zones;
+		final EdgeIndex edgeIndex;
+		final CostFields costFields; //null without --cost-fields, or once the buildings changed
+
+		Mission(String date, String day, String month, String year, List<SensorNode> sensors, List<Replanner.Plan> plans,
+				NoFlyZones zones, EdgeIndex edgeIndex, CostFields costFields) {
+			this.date = date;
+			this.day = day;
+			this.month = month;
+			this.year = year;
+			this.sensors = sensors;
+			this.plans = plans;
+			this.zones = zones;
+			this.edgeIndex = edgeIndex;
+			this.costFields = costFields;
+		}
+	}
+
+	private final String webPort;
+	private final Options options;
+	private final NoFlyZones zones;
+	private final EdgeIndex edgeIndex;
+	private final WordsCache wordsCache;
+	private final ThreadPoolExecutor planners;
+	private final Map<String, Mission> missions = Collections.synchronizedMap(new LinkedHashMap<String, Mission>(16, .75f, true) { //least recently used first
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Mission> eldest) {
+			return size() > keptPlans;
+		}
+	});
+	private HttpServer server;
+
+	/*
+	 * takes the port of the web server the sensors and buildings come from, the options every request is planned with,
+	 * the buildings and their edges, and the W3W cache (null for none)
+	 */
+	PlannerServer(String webPort, Options options, NoFlyZones zones, EdgeIndex edgeIndex, WordsCache wordsCache) {
+		this.webPort = webPort;
+		this.options = options;
+		this.zones = zones;
+		this.edgeIndex = edgeIndex;
+		this.wordsCache = wordsCache;
+		BlockingQueue<Runnable> waiting = options.queue > 0 ? new ArrayBlockingQueue<Runnable>(options.queue) : new SynchronousQueue<Runnable>();
+		planners = new ThreadPoolExecutor(options.workers, options.workers, 0, TimeUnit.MILLISECONDS, waiting); //rejects, rather than blocks, when full
+	}
+
+	public static void main(String[] args) throws IOException {
+		final int port = Integer.parseInt(args[0]); //port to listen on
+		final String webPort = args[1]; //port of the web server, usually 80
+		final var options = Options.parse(args, 2);
+		Metrics.configure(options);
+		final long serverStart = System.nanoTime();
+
+		var zones = NoFlyZones.load(webPort, options.zonesCache);
+		var edgeIndex = new EdgeIndex(zones);
+		var wordsCache = options.wordsCache == null ? null : new WordsCache(options.wordsCache);
+
+		var planner = new PlannerServer(webPort, options, zones, edgeIndex, wordsCache);
+		planner.start(port);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			planner.stop();
+			try {
+				Metrics.finish(options, System.nanoTime() - serverStart); //covers every request since start up
+			}
+			catch(IOException e) {
+				System.out.println("Could not write the report: " + e);
+			}
+			try {
+				if(wordsCache != null) wordsCache.close();
+			}
+			catch(IOException e) {
+				System.out.println("Could not save the W3W cache: " + e);
+			}
+		}));
+		System.out.println("Planning on http://localhost:" + planner.getPort() + "/plan, " + options.workers + " workers, " + options.queue + " queued at most");
+	}
+
+	/*
+	 * starts listening on localhost at port, 0 for any free port
+	 */
+	void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/plan", this::plan);
+		server.createContext("/replan", this::replan);
+		server.createContext("/health", this::health);
+		server.start(); //handlers run on the server's own thread, they only parse the request and hand it to a planner
+	}
+
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/*
+	 * stops taking requests, lets the ones planning and queued finish
+	 */
+	void stop() {
+		server.stop(0);
+		planners.shutdown();
+		try {
+			planners.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void health(HttpExchange exchange) throws IOException {
+		respond(exchange, 200, "{\"planning\":" + planners.getActiveCount() + ",\"queued\":" + planners.getQueue().size() + "}");
+	}
+
+	private void plan(HttpExchange exchange) throws IOException {
+		if(!isPost(exchange)) return;
+		PlanRequest request;
+		LocalDate date;
+		try(var body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+			request = gson.fromJson(body, PlanRequest.class);
+			if(request == null || request.date == null || request.lat == null || request.lng == null || request.seed == null) {
+				throw new JsonParseException("Expected date, lat, lng and seed");
+			}
+			date = LocalDate.parse(request.date, dateFormat);
+			if(request.drones != null) {
+				for(double[] drone : request.drones) if(drone == null || drone.length != 2) throw new JsonParseException("Expected each drone as [lat, lng]");
+			}
+		}
+		catch(JsonParseException | DateTimeParseException e) {
+			respond(exchange, 400, error(e.getMessage()));
+			return;
+		}
+
+		submit(exchange, () -> planAndRespond(exchange, request, date));
+	}
+
+	private void replan(HttpExchange exchange) throws IOException {
+		if(!isPost(exchange)) return;
+		ReplanRequest request;
+		Mission mission;
+		try(var body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+			request = gson.fromJson(body, ReplanRequest.class);
+			if(request == null || request.planId == null) throw new JsonParseException("Expected planId");
+			mission = missions.get(request.planId);
+			if(mission == null) {
+				respond(exchange, 404, error("No plan " + request.planId + ", only the last " + keptPlans + " plans are kept"));
+				return;
+			}
+			if(request.add != null) {
+				for(SensorNode node : request.add) {
+					if(node == null || node.getLocation() == null || node.getLocation().split("\\.").length != 3) throw new JsonParseException("Expected each added sensor's location as three words");
+				}
+			}
+			if(request.remove != null) {
+				var known = new HashSet<String>();
+				for(SensorNode node : mission.sensors) known.add(node.getLocation());
+				for(String words : request.remove) if(!known.contains(words)) throw new JsonParseException("No sensor " + words + " in the plan");
+			}
+		}
+		catch(JsonParseException e) {
+			respond(exchange, 400, error(e.getMessage()));
+			return;
+		}
+
+		submit(exchange, () -> replanAndRespond(exchange, request, mission));
+	}
+
+	//answers 405 unless the request is a POST, returns whether it was
+	private static boolean isPost(HttpExchange exchange) throws IOException {
+		if(exchange.getRequestMethod().equals("POST")) return true;
+		exchange.getResponseHeaders().set("Allow", "POST");
+		respond(exchange, 405, error("Use POST"));
+		return false;
+	}
+
+	//hands the request to a planner, answering 503 straight away if none is free
+	private void submit(HttpExchange exchange, Runnable work) throws IOException {
+		try {
+			planners.execute(work);
+		}
+		catch(RejectedExecutionException e) { //every worker busy and the queue full, or shutting down
+			exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+			respond(exchange, 503, error("Too many plan requests, try again later"));
+		}
+	}
+
+	/*
+	 * Plans the request on a worker, in a directory of its own so requests for the same date never share files,
+	 * then streams the files back and deletes them
+	 */
+	private void planAndRespond(HttpExchange exchange, PlanRequest request, LocalDate date) {
+		java.nio.file.Path directory = null;
+		try {
+			long planStart = System.nanoTime();
+			var day = String.format("%02d", date.getDayOfMonth());
+			var month = String.format("%02d", date.getMonthValue());
+			var year = String.format("%04d", date.getYear());
+			ArrayList<SensorNode> sensorNodeList;
+			try {
+				sensorNodeList = FileManager.getSensorList(day, month, year, webPort, options.fetchConcurrency, wordsCache);
+			}
+			catch(IOException e) {
+				respond(exchange, 502, error("Could not fetch the sensors: " + e.getMessage()));
+				return;
+			}
+
+			directory = Files.createTempDirectory("plan-");
+			var drones = request.drones == null ? new ArrayList<double[]>() : Arrays.asList(request.drones);
+			var starts = App.startNodes(request.lat, request.lng, drones);
+			var costFields = App.costFields(sensorNodeList, starts, zones, edgeIndex, options);
+			var plans = App.planFleet(sensorNodeList, starts, zones, edgeIndex, costFields, request.seed, planStart, options);
+			int moves = App.saveDay(day, month, year, sensorNodeList, plans, directory.toString());
+			long planMs = (System.nanoTime() - planStart) / 1000000;
+			System.out.println("Planned " + request.date + " in " + planMs + " ms, " + moves + " moves");
+
+			var planId = keep(new Mission(request.date, day, month, year, sensorNodeList, plans, zones, edgeIndex, costFields));
+			respondWithFiles(exchange, "\"date\":" + gson.toJson(request.date) + ",\"moves\":" + moves + ",\"planMs\":" + planMs + ",\"planId\":" + gson.toJson(planId),
+					directory, "readings-" + day + "-" + month + "-" + year + ".geojson");
+		}
+		catch(IOException | RuntimeException e) {
+			System.out.println("Plan for " + request.date + " failed: " + e);
+			try {
+				respond(exchange, 500, error("Planning failed: " + e));
+			}
+			catch(IOException | RuntimeException ignored) { //the headers may already be sent, the client sees a cut off response
+			}
+		}
+		finally {
+			exchange.close();
+			if(directory != null) delete(directory);
+		}
+	}
+
+	/*
+	 * Repairs a kept plan on a worker: locates the added sensors, shares them out, replans each drone with Replanner
+	 * around the buildings now, then saves and streams the files as planAndRespond does
+	 */
+	private void replanAndRespond(HttpExchange exchange, ReplanRequest request, Mission mission) {
+		java.nio.file.Path directory = null;
+		try {
+			long planStart = System.nanoTime();
+			var added = request.add == null ? new ArrayList<SensorNode>() : new ArrayList<SensorNode>(Arrays.asList(request.add));
+			try {
+				FileManager.locate(added, webPort, options.fetchConcurrency, wordsCache);
+			}
+			catch(IOException e) {
+				respond(exchange, 502, error("Could not locate the added sensors: " + e.getMessage()));
+				return;
+			}
+
+			var zones = mission.zones;
+			var edgeIndex = mission.edgeIndex;
+			var costFields = mission.costFields;
+			List<double[]> changed = new ArrayList<double[]>();
+			if(request.zones != null) {
+				NoFlyZones now;
+				try {
+					now = NoFlyZones.parse(request.zones.toString().getBytes(StandardCharsets.UTF_8));
+				}
+				catch(IOException e) {
+					respond(exchange, 400, error(e.getMessage()));
+					return;
+				}
+				changed = now.changedSince(mission.zones);
+				if(!changed.isEmpty()) {
+					zones = now;
+					edgeIndex = new EdgeIndex(zones);
+					costFields = null; //the fields go round the old buildings
+				}
+			}
+
+			var removed = new HashSet<String>(request.remove == null ? new ArrayList<String>() : Arrays.asList(request.remove));
+			var sensors = new ArrayList<SensorNode>();
+			for(SensorNode node : mission.sensors) if(!removed.contains(node.getLocation())) sensors.add(node);
+			sensors.addAll(added);
+
+			var addedTo = new ArrayList<List<SensorNode>>(); //the added sensors of each drone
+			for(int k = 0; k < mission.plans.size(); k++) addedTo.add(new ArrayList<SensorNode>());
+			for(SensorNode node : added) addedTo.get(nearestDrone(mission.plans, node)).add(node);
+
+			var plans = new ArrayList<Replanner.Plan>();
+			int kept = 0, shifted = 0, replanned = 0, dropped = 0;
+			for(int k = 0; k < mission.plans.size(); k++) {
+				var previous = mission.plans.get(k);
+				var context = App.droneContext(previous.nodes.get(0), previous.order.size() + addedTo.get(k).size(), edgeIndex, costFields, planStart, options);
+				var plan = Replanner.replan(previous, addedTo.get(k), removed, context, changed);
+				plans.add(plan);
+				kept += plan.kept;
+				shifted += plan.shifted;
+				replanned += plan.replanned;
+				dropped += plan.dropped;
+			}
+
+			directory = Files.createTempDirectory("plan-");
+			int moves = App.saveDay(mission.day, mission.month, mission.year, sensors, plans, directory.toString());
+			long planMs = (System.nanoTime() - planStart) / 1000000;
+			System.out.println("Replanned " + mission.date + " in " + planMs + " ms, " + moves + " moves, " + replanned + " legs planned again");
+
+			var planId = keep(new Mission(mission.date, mission.day, mission.month, mission.year, sensors, plans, zones, edgeIndex, costFields));
+			respondWithFiles(exchange, "\"date\":" + gson.toJson(mission.date) + ",\"moves\":" + moves + ",\"planMs\":" + planMs + ",\"planId\":" + gson.toJson(planId)
+					+ ",\"kept\":" + kept + ",\"shifted\":" + shifted + ",\"replanned\":" + replanned + ",\"dropped\":" + dropped,
+					directory, "readings-" + mission.day + "-" + mission.month + "-" + mission.year + ".geojson");
+		}
+		catch(IOException | RuntimeException e) {
+			System.out.println("Replan of " + request.planId + " failed: " + e);
+			try {
+				respond(exchange, 500, error("Replanning failed: " + e));
+			}
+			catch(IOException | RuntimeException ignored) { //the headers may already be sent, the client sees a cut off response
+			}
+		}
+		finally {
+			exchange.close();
+			if(directory != null) delete(directory);
+		}
+	}
+
+	//the drone with a node, its start or a sensor, nearest the sensor
+	private static int nearestDrone(List<Replanner.Plan> plans, SensorNode sensor) {
+		int nearest = 0;
+		double nearestDistance = Double.POSITIVE_INFINITY;
+		for(int k = 0; k < plans.size(); k++) {
+			for(SensorNode node : plans.get(k).nodes) {
+				double distance = Math.hypot(node.getLng() - sensor.getLng(), node.getLat() - sensor.getLat());
+				if(distance < nearestDistance) {
+					nearest = k;
+					nearestDistance = distance;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	//keeps the mission for /replan, returns its planId
+	private String keep(Mission mission) {
+		var planId = UUID.randomUUID().toString();
+		missions.put(planId, mission);
+		return planId;
+	}
+
+	/*
+	 * Answers 200 with the fields given, already as JSON, then the flightpath files of the directory as strings and the readings file as it is
+	 */
+	private static void respondWithFiles(HttpExchange exchange, String fields, java.nio.file.Path directory, String readingsName) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, 0); //chunked, the files are copied in as they are read
+		try(var out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+			out.write("{" + fields + ",\"flightpaths\":[");
+			try(var files = Files.newDirectoryStream(directory, "flightpath-*.txt")) {
+				var names = new ArrayList<java.nio.file.Path>();
+				files.forEach(names::add);
+				names.sort(Comparator.comparing(java.nio.file.Path::toString)); //drone 1 first
+				for(int i = 0; i < names.size(); i++) {
+					if(i > 0) out.write(',');
+					copyAsString(names.get(i), out);
+				}
+			}
+			out.write("],\"readings\":");
+			try(var readings = Files.newBufferedReader(directory.resolve(readingsName), StandardCharsets.UTF_8)) {
+				readings.transferTo(out); //already JSON
+			}
+			out.write('}');
+		}
+	}
+
+	private static void delete(java.nio.file.Path directory) {
+		try(var files = Files.newDirectoryStream(directory)) {
+			for(java.nio.file.Path file : files) Files.delete(file);
+			Files.delete(directory);
+		}
+		catch(IOException e) {
+			System.out.println("Could not delete " + directory + ": " + e);
+		}
+	}
+
+	/*
+	 * copies a text file to out as one JSON string, escaped as JsonWriter escapes string values
+	 */
+	private static void copyAsString(java.nio.file.Path file, Writer out) throws IOException {
+		out.write('"');
+		try(var in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			for(int c = in.read(); c >= 0; c = in.read()) {
+				switch(c) {
+				case '"': out.write("\\\""); break;
+				case '\\': out.write("\\\\"); break;
+				case '\n': out.write("\\n"); break;
+				case '\r': out.write("\\r"); break;
+				case '\t': out.write("\\t"); break;
+				case '\b': out.write("\\b"); break;
+				case '\f': out.write("\\f"); break;
+				case '\u2028': out.write("\\u2028"); break;
+				case '\u2029': out.write("\\u2029"); break;
+				default:
+					if(c < 0x20) out.write(String.format("\\u%04x", c));
+					else out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+
+	private static String error(String message) {
+		var object = new JsonObject();
+		object.addProperty("error", message);
+		return object.toString();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		var bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try(var body = exchange.getResponseBody()) {
+			body.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.utils.GeoJsonUtils;
+
+/*
+ * Writes the readings GeoJSON feature by feature with a JsonWriter, rather than building a FeatureCollection and its whole JSON String
+ * The output is the same as FeatureCollection.toJson() gave: the same member order, no whitespace,
+ * and coordinates rounded to 7 decimal places as the mapbox adapters do
+ */
+final class ReadingsWriter implements Closeable {
+
+	private final JsonWriter json;
+
+	/*
+	 * creates the file, or empties it if it exists, and opens the FeatureCollection
+	 * throws IOException if it cannot be opened
+	 */
+	ReadingsWriter(String fileName) throws IOException {
+		json = new JsonWriter(Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8));
+		json.beginObject();
+		json.name("type").value("FeatureCollection");
+		json.name("features").beginArray();
+	}
+
+	/*
+	 * writes a sensor as a Point feature, with its marker symbol (unless it has none) and its color
+	 */
+	void writeSensor(SensorNode node) throws IOException {
+		json.beginObject();
+		json.name("type").value("Feature");
+		json.name("geometry").beginObject();
+		json.name("type").value("Point");
+		json.name("coordinates");
+		position(node.getLng(), node.getLat());
+		json.endObject();
+
+		json.name("properties").beginObject();
+		if(node.getSymbol() != "no symbol") json.name("marker-symbol").value(node.getSymbol());
+		json.name("rgb-string").value(node.getColor());
+		json.name("marker-color").value(node.getColor());
+		json.endObject();
+		json.endObject();
+	}
+
+	/*
+	 * writes the points a drone flew through as a LineString feature with no properties, each one as the Iterable gives it
+	 */
+	void writeFlight(Iterable<Point> points) throws IOException {
+		json.beginObject();
+		json.name("type").value("Feature");
+		json.name("geometry").beginObject();
+		json.name("type").value("LineString");
+		json.name("coordinates").beginArray();
+		for(Point point : points) position(point.longitude(), point.latitude());
+		json.endArray();
+		json.endObject();
+		json.name("properties").beginObject().endObject();
+		json.endObject();
+	}
+
+	private void position(double lng, double lat) throws IOException {
+		json.beginArray();
+		json.value(GeoJsonUtils.trim(lng));
+		json.value(GeoJsonUtils.trim(lat));
+		json.endArray();
+	}
+
+	/*
+	 * closes the FeatureCollection and the file
+	 */
+	@Override
+	public void close() throws IOException {
+		json.endArray();
+		json.endObject();
+		json.close();
+	}
+}
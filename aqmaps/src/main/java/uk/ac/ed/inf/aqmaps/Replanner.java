@@ -0,0 +1,271 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.mapbox.geojson.Point;
+
+/*
+ * Repairs a flight after a small change, a few sensors added or dropped or the no-fly-zones edited, instead of planning it all again
+ * PlannerServer's POST /replan repairs each drone's Plan, as App.planDrone made it, with this
+ *
+ * The tour is repaired in place: dropped sensors are taken out, added ones are put in wherever they fit cheapest,
+ * and 2-opt only tries reversals that start and end near a change, so the rest of the order stays as it was.
+ * Sensors the previous flight skipped, with --orienteering, stay skipped.
+ * Then the legs are walked in order. A leg between the same two sensors as before is kept as it was if it starts
+ * where it used to and its bounding box misses every polygon added, removed or moved since the previous plan.
+ * Otherwise its moves are checked again, shifted to where the drone now really is as ParallelLegPlanner stitches its legs,
+ * and it is reused only if every move still misses the buildings and it still ends within reach of its sensor.
+ * Any other leg is planned again, from the real start, with Path.
+ * If the flight then takes more than App.maxMoves, sensors are dropped, the one whose legs cost the most moves first,
+ * and the legs walked again until it fits, so the drone still gets back to its start
+ */
+final class Replanner {
+
+	final static double reach = .0002; //how close a leg has to end to its sensor
+	final static int window = 4; //positions either side of a change 2-opt may reverse from
+
+	/*
+	 * A planned flight: its nodes (start node first), the order they are visited in (start node first) and one leg per node,
+	 * leg i flying from order[i] to order[i + 1], the last one back to the start
+	 */
+	static final class Plan {
+		final ArrayList<SensorNode> nodes;
+		final ArrayList<Integer> order;
+		final ArrayList<Path> legs;
+		int kept; //legs reused as they were, shifted, and planned again by the replan that made this plan
+		int shifted;
+		int replanned;
+		int dropped; //sensors left out so the flight fits in App.maxMoves
+
+		Plan(ArrayList<SensorNode> nodes, ArrayList<Integer> order, ArrayList<Path> legs) {
+			this.nodes = nodes;
+			this.order = order;
+			this.legs = legs;
+		}
+
+		public String summary() {
+			return "Replan: " + kept + " legs kept, " + shifted + " shifted, " + replanned + " planned again" + (dropped > 0 ? ", " + dropped + " sensors dropped to fit in " + App.maxMoves + " moves" : "");
+		}
+	}
+
+	private Replanner() {
+	}
+
+	/*
+	 * takes the previous plan, the sensors to add, the W3W words of the sensors to drop, the PathContext of the current buildings
+	 * and the bounding boxes of the polygons that changed since the previous plan (NoFlyZones.changedSince), empty if none did
+	 * returns the repaired plan, the previous one is not changed
+	 */
+	static Plan replan(Plan previous, List<SensorNode> added, Set<String> removed, PathContext context, List<double[]> changed) {
+		//the new node list: the previous nodes still wanted, in their old order, then the added ones
+		var nodes = new ArrayList<SensorNode>();
+		var newIndex = new int[previous.nodes.size()]; //previous node -> its index in nodes, -1 if dropped
+		for(int i = 0; i < newIndex.length; i++) {
+			var node = previous.nodes.get(i);
+			if(i > 0 && removed.contains(node.getLocation())) {
+				newIndex[i] = -1;
+				continue;
+			}
+			newIndex[i] = nodes.size();
+			nodes.add(node);
+		}
+		nodes.addAll(added);
+
+		var order = new ArrayList<Integer>();
+		var touched = new ArrayList<Integer>(); //nodes next to a change, 2-opt works around them
+		for(int i = 0; i < previous.order.size(); i++) {
+			int node = newIndex[previous.order.get(i)];
+			if(node >= 0) order.add(node);
+			else if(!order.isEmpty()) touched.add(order.get(order.size() - 1));
+		}
+		if(order.isEmpty() && !added.isEmpty()) order.add(0); //the drone had nothing to visit, it now starts from its start node
+		for(int node = nodes.size() - added.size(); node < nodes.size(); node++) {
+			insert(nodes, order, node);
+			touched.add(node);
+		}
+		for(int node : touched) twoOptAround(nodes, order, node);
+
+		var known = new HashMap<Long, Path>(); //from * nodes + to -> a leg between them, from the previous plan or an earlier walk
+		for(int i = 0; i < previous.order.size(); i++) {
+			int from = newIndex[previous.order.get(i)], to = newIndex[previous.order.get((i + 1) % previous.order.size())];
+			if(from >= 0 && to >= 0) known.put(key(nodes, from, to), previous.legs.get(i));
+		}
+
+		var plan = new Plan(nodes, order, new ArrayList<Path>());
+		if(order.size() < 2) { //every sensor of the drone was dropped
+			order.clear();
+			return plan;
+		}
+		var planned = new HashSet<Path>(); //legs this replan planned or shifted from one it planned, compared by identity
+		walk(plan, known, planned, context, changed);
+		while(moves(plan.legs) > App.maxMoves && order.size() > 2) { //added sensors can push a flight past the move limit, App would cut it off before it got back
+			drop(plan);
+			walk(plan, known, planned, context, changed);
+		}
+		Metrics.progress(plan.summary());
+		return plan;
+	}
+
+	/*
+	 * Plans the legs of plan's order, reusing known legs where it can, and counts how each leg came about
+	 * known and planned learn the legs it plans
+	 */
+	private static void walk(Plan plan, HashMap<Long, Path> known, HashSet<Path> planned, PathContext context, List<double[]> changed) {
+		var order = plan.order;
+		plan.legs.clear();
+		plan.kept = plan.shifted = plan.replanned = 0;
+		var start = point(plan.nodes.get(order.get(0)));
+		for(int i = 0; i < order.size(); i++) {
+			int from = order.get(i), to = order.get((i + 1) % order.size());
+			var target = plan.nodes.get(to);
+			Path leg = null;
+			var old = known.get(key(plan.nodes, from, to));
+			if(old != null && !old.getInstructions().isEmpty()) { //a leg with no moves found has nothing to reuse
+				if(old.getInstructions().get(0).getPreMove().equals(start) && (planned.contains(old) || !touches(old, changed))) leg = old;
+				else {
+					leg = shift(old, start, target, context);
+					if(leg != null && leg != old && planned.contains(old)) planned.add(leg);
+				}
+			}
+			if(leg == null) {
+				leg = new Path(start, point(target), target.getLocation(), context);
+				planned.add(leg);
+			}
+			if(planned.contains(leg)) plan.replanned++;
+			else if(leg == old) plan.kept++;
+			else plan.shifted++;
+			known.put(key(plan.nodes, from, to), leg);
+			plan.legs.add(leg);
+			start = leg.getActualEndPoint();
+		}
+	}
+
+	/*
+	 * Takes out of the order the sensor, never the start node, whose legs in and out take the most moves
+	 * over the estimate of flying straight past it, as OrienteeringPlanner drops sensors
+	 */
+	private static void drop(Plan plan) {
+		var order = plan.order;
+		int bestSlot = -1;
+		double bestSaving = Double.NEGATIVE_INFINITY;
+		for(int slot = 1; slot < order.size(); slot++) {
+			int before = order.get(slot - 1), after = order.get((slot + 1) % order.size());
+			double bridge = Math.max(1, Math.ceil(Math.max(0, distance(plan.nodes, before, after) - reach) / OrienteeringPlanner.moveLength));
+			double saving = plan.legs.get(slot - 1).getMoveCount() + plan.legs.get(slot).getMoveCount() - bridge;
+			if(saving > bestSaving) {
+				bestSlot = slot;
+				bestSaving = saving;
+			}
+		}
+		order.remove(bestSlot);
+		plan.dropped++;
+	}
+
+	private static int moves(List<Path> legs) {
+		int total = 0;
+		for(Path leg : legs) total += leg.getMoveCount();
+		return total;
+	}
+
+	private static long key(List<SensorNode> nodes, int from, int to) {
+		return (long) from * nodes.size() + to;
+	}
+
+	/*
+	 * Replays the moves of a leg from start
+	 * returns the shifted leg, the leg itself if it already started there, or null if a move now touches a building
+	 * or it no longer ends within reach of its sensor
+	 */
+	private static Path shift(Path leg, Point start, SensorNode target, PathContext context) {
+		var instructions = leg.getInstructions();
+		var shiftLng = start.longitude() - instructions.get(0).getPreMove().longitude();
+		var shiftLat = start.latitude() - instructions.get(0).getPreMove().latitude();
+
+		var points = new ArrayList<Point>(instructions.size() + 1);
+		points.add(start);
+		double fromLng = start.longitude(), fromLat = start.latitude();
+		for(Instruction inst : instructions) {
+			double toLng = inst.getPostMove().longitude() + shiftLng, toLat = inst.getPostMove().latitude() + shiftLat;
+			if(!context.edges.isValidMove(fromLng, fromLat, toLng, toLat)) return null;
+			points.add(Point.fromLngLat(toLng, toLat));
+			fromLng = toLng;
+			fromLat = toLat;
+		}
+		var endLng = fromLng - target.getLng();
+		var endLat = fromLat - target.getLat();
+		if(Math.sqrt((endLat*endLat) + (endLng*endLng)) >= reach) return null; //same check the search ends on
+		if(shiftLng == 0 && shiftLat == 0) return leg;
+		return new Path(points, point(target), target.getLocation(), context);
+	}
+
+	//whether the bounding box of the leg's moves overlaps any of the changed boxes, each minX, minY, maxX, maxY
+	private static boolean touches(Path leg, List<double[]> changed) {
+		if(changed.isEmpty()) return false;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for(Instruction inst : leg.getInstructions()) {
+			for(Point point : new Point[] {inst.getPreMove(), inst.getPostMove()}) {
+				minX = Math.min(minX, point.longitude());
+				minY = Math.min(minY, point.latitude());
+				maxX = Math.max(maxX, point.longitude());
+				maxY = Math.max(maxY, point.latitude());
+			}
+		}
+		for(double[] box : changed) {
+			if(minX <= box[2] && box[0] <= maxX && minY <= box[3] && box[1] <= maxY) return true;
+		}
+		return false;
+	}
+
+	//puts the node between the two consecutive nodes of the order it adds the least distance between
+	private static void insert(ArrayList<SensorNode> nodes, ArrayList<Integer> order, int node) {
+		int bestSlot = 0;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for(int slot = 0; slot < order.size(); slot++) {
+			int a = order.get(slot), b = order.get((slot + 1) % order.size());
+			double cost = distance(nodes, a, node) + distance(nodes, node, b) - distance(nodes, a, b);
+			if(cost < bestCost) {
+				bestSlot = slot;
+				bestCost = cost;
+			}
+		}
+		order.add(bestSlot + 1, node);
+	}
+
+	/*
+	 * 2-opt limited to reversals of order[i..j] with both ends within window positions of the node, repeated until none helps
+	 * the start node, at position 0, never moves
+	 */
+	private static void twoOptAround(ArrayList<SensorNode> nodes, ArrayList<Integer> order, int node) {
+		int size = order.size();
+		boolean better = true;
+		while(better) {
+			better = false;
+			int at = order.indexOf(node);
+			if(at < 0) return;
+			int low = Math.max(1, at - window), high = Math.min(size - 1, at + window);
+			for(int i = low; i < high && !better; i++) {
+				for(int j = i + 1; j <= high && !better; j++) {
+					int before = order.get(i - 1), first = order.get(i), last = order.get(j), after = order.get((j + 1) % size);
+					double change = distance(nodes, before, last) + distance(nodes, first, after) - distance(nodes, before, first) - distance(nodes, last, after);
+					if(change < -1e-12) {
+						Collections.reverse(order.subList(i, j + 1));
+						better = true;
+					}
+				}
+			}
+		}
+	}
+
+	private static double distance(ArrayList<SensorNode> nodes, int a, int b) {
+		return Math.hypot(nodes.get(a).getLng() - nodes.get(b).getLng(), nodes.get(a).getLat() - nodes.get(b).getLat());
+	}
+
+	private static Point point(SensorNode node) {
+		return Point.fromLngLat(node.getLng(), node.getLat());
+	}
+}
@@ -1,198 +1,467 @@
-package uk.ac.ed.inf.aqmaps;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-/*
- * Class that chooses the order sensors will be visited in 
- * runs a Traveling Salesman Problem optimization
- * requires a list of nodes, then a TSP function to be called
- */
-public class RouteFinder {
-	
-	ArrayList<SensorNode> nodes; //all nodes that need to be visited
-	SensorNode startnode;
-	ArrayList<Integer> order;
-	double[][] distances; //approximate distance lookup table for nodes (ignoring buildings)
-	
-	public RouteFinder(ArrayList<SensorNode> nodes) {
-		this.nodes = nodes;
-		this.startnode = nodes.get(0);
-		
-		this.distances = new double[nodes.size()][nodes.size()]; //chooses size of distances[][]
-		
-		//populates distances[][] with the Euclidean distance between points
-		for(int i = 0; i < distances.length; i++) {
-			for(int j = 0; j < distances.length; j++) {
-				double[] p1 = new double[] {nodes.get(i).getLat(), nodes.get(i).getLng()};
-				double[] p2 = new double[] {nodes.get(j).getLat(), nodes.get(j).getLng()};
-				distances[i][j] = getEuclid(p1, p2);
-			}
-		}
-		
-		this.order = new ArrayList<Integer>();
-		for(int i = 0; i < distances.length; i++) {
-			order.add(i);
-		}
-	}
-	
-	public ArrayList<Integer> getOrder(){
-		return order;
-	}
-	
-	public ArrayList<SensorNode> getNodeList(){
-		return nodes;
-	}
-	
-	public void setStartNodeFirst() {
-		while(nodes.get(order.get(0)) != startnode) {
-			order.add(order.size(), order.get(0));
-			order.remove(0);
-		}
-	}
-	
-	/*
-	 * Runs a variant on insertion sort for the route, inserting each new node at the cheapest place for it until no nodes remain
-	 * 
-	 * Returns a List of the indexes, so that the index of the first node to visit in the provided list of nodes is at 
-	 * index 0 in the returned list 
-	 */
-	public void tspInsertion(){
-		
-		//Creates list of all indexes of nodes that need to be added
-		var optionList = order;
-		
-		//initializes list of indexes for final list
-		var finalList = new ArrayList<Integer>();
-		
-		//adds the first two indexes of the list as a base, removes them from options 
-		finalList.add(optionList.get(0));
-		optionList.remove(0);
-		finalList.add(optionList.get(0));
-		optionList.remove(0);
-		
-		var minOpt = new int[] {0,0}; //the index to be inserted, the location it should be inserted into on the finallist
-		
-		while(!optionList.isEmpty()) { //while there are indexes left to insert
-			var minOptVal = Double.POSITIVE_INFINITY;
-			
-			//finds the cheapest node to insert and the cheapest place to insert it
-			for(int i = 0; i < optionList.size(); i++) {
-				for(int j = 0; j < finalList.size(); j++) {
-					var newVal = distances[optionList.get(i)][finalList.get(j)]
-							   + distances[optionList.get(i)][finalList.get((j + 1) % finalList.size())]
-							   - distances[finalList.get(j)][finalList.get((j + 1) % finalList.size())];//calculates cost of insertion
-					if(newVal < minOptVal) {
-						//saves the cheaper option
-						minOpt[0] = i;
-						minOpt[1] = j;
-						minOptVal = newVal;
-					}
-				}
-			}
-			
-			//adds index to appropriate place and removes it from the options
-			finalList.add(minOpt[1] + 1, optionList.get(minOpt[0]));
-			optionList.remove(minOpt[0]);
-		}
-		
-		System.out.println("Insertion Sort Done");
-		order = finalList;
-	}
-	
-	/*
-	 * Heuristic to attempt to improve path
-	 * keeps swapping nodes until it can't be improved by swapping two nodes
-	 */
-	public void swapHeuristic(){
-		boolean better = true;
-		while(better) {
-			better = false;
-			for(int i = 0; i < order.size(); i++) {
-				if(trySwap(i)) {
-					better = true; //variable to swap with next on list
-				}
-			}
-		}
-		System.out.println("Swap Heuristic Done");
-	}
-	
-	/*
-	 * checks to see if swapping the entered index of order and the next index of order is a good idea
-	 * if so, swaps and returns true
-	 * otherwise returns false
-	 */
-	private boolean trySwap(int orderIndex) { 
-		int preindex = order.get((order.size() + orderIndex - 1) % order.size()); // node connecting to original
-		int index = order.get(orderIndex); //original node
-		int postindex = order.get((order.size() + orderIndex + 1) % order.size()); //node to swap with
-		int postpostindex = order.get((order.size() + orderIndex + 2) % order.size()); //node connecting to node to swap with
-		double swap = distances[preindex][postindex] + distances[postpostindex][index]; // value of the new connections formed
-		double noSwap = distances[preindex][index] + distances[postindex][postpostindex]; //value of old connections lost
-		
-		if(swap < noSwap) { //if the swap is good, swaps them
-			int temp = order.get(orderIndex);
-			order.set(orderIndex, order.get((orderIndex + 1) % order.size()));
-			order.set((orderIndex + 1) % order.size(), temp);
-			
-			return true;
-		}
-		else return false;
-	}
-	
-	/*
-	 * Heuristic that reverses subsections of the list until no more reverses will improve the list
-	 */
-	public void twoOptHeuristic() {
-		boolean better = true;
-		while(better) {
-			better = false;
-			for(int j = 0; j < order.size() - 1; j++) {
-				for(int i = 0; i < j; i++) {
-					if(tryReverse(i,j)) { //i and j hold the endpoints of the sublist that is considering being reversed
-						better = true;
-					}
-				}
-			}
-		}
-		System.out.println("Two-Opt Heuristic Done");
-	}
-	
-	/*
-	 * Tries reversing the orders between orderi and orderj
-	 * Checks if it is more efficient to reverse them
-	 * If so, reverses them and returns true
-	 * otherwise, returns false
-	 */
-	private boolean tryReverse(int orderi, int orderj) {
-		int preI = order.get((order.size() + orderi - 1) % order.size()); //the node that attaches to i and will be changed
-		int i = order.get(orderi); 
-		int j = order.get(orderj);
-		int postj = order.get((order.size() + orderj + 1) % order.size()); //the node that attaches to j and will be changed
-		
-		double swap = distances[preI][j] + distances[i][postj]; //the cost of the two connections if swapped
-		double noSwap = distances[preI][i] + distances[j][postj]; //the cost of the two changed connections if not swapped
-		
-		if(swap < noSwap) {
-			var tempList = order.subList(orderi, orderj + 1); //temporary list holding the reversed sublist
-			Collections.reverse(tempList);
-
-			for(int k = orderi; k < orderj + 1; k++) { //copies reversed sublist into appropriate location
-				order.set(k, tempList.get(k - orderi));
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	
-	/*
-	 * Calculates Euclidean distance between two points
-	 */
-	private double getEuclid(double[] p1, double[] p2) {
-		var xDif = (p1[0] - p2[0]) * (p1[0] - p2[0]);
-		var yDif = (p1[1] - p2[1]) * (p1[1] - p2[1]);
-		return Math.sqrt(xDif + yDif);
-	}
-}
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Class that chooses the order sensors will be visited in 
+ * runs a Traveling Salesman Problem optimization
+ * requires a list of nodes, then a TSP function to be called
+ */
+public class RouteFinder {
+	
+	ArrayList<SensorNode> nodes; //all nodes that need to be visited
+	SensorNode startnode;
+	ArrayList<Integer> order;
+	double[][] distances; //approximate distance lookup table for nodes (ignoring buildings unless given by a VisibilityGraph), null in sparse mode
+	private double[] lat; //coordinates of the nodes, the straight line distances in sparse mode are worked out from these
+	private double[] lng;
+	private KdTree tree; //nearest neighbor queries over the nodes, sparse mode only
+	
+	public RouteFinder(ArrayList<SensorNode> nodes) {
+		this(nodes, euclidDistances(nodes));
+	}
+	
+	/*
+	 * RouteFinder constructor taking the distances between nodes, indexed like nodes,
+	 * for example the distances around the buildings from a VisibilityGraph
+	 */
+	public RouteFinder(ArrayList<SensorNode> nodes, double[][] distances) {
+		this.nodes = nodes;
+		this.startnode = nodes.get(0);
+		this.distances = distances;
+		
+		this.order = new ArrayList<Integer>();
+		for(int i = 0; i < nodes.size(); i++) {
+			order.add(i);
+		}
+	}
+	
+	/*
+	 * RouteFinder for many nodes, which never builds the distance table: straight line distances are worked out when needed
+	 * and the heuristics only look at each node's nearest neighbors, found with a KdTree, so memory grows linearly with the nodes
+	 * use greedyTour and localSearch with it, tspInsertion needs the table
+	 */
+	public static RouteFinder sparse(ArrayList<SensorNode> nodes) {
+		var finder = new RouteFinder(nodes, null);
+		finder.lat = new double[nodes.size()];
+		finder.lng = new double[nodes.size()];
+		for(int i = 0; i < nodes.size(); i++) {
+			finder.lat[i] = nodes.get(i).getLat();
+			finder.lng[i] = nodes.get(i).getLng();
+		}
+		finder.tree = new KdTree(finder.lng, finder.lat);
+		return finder;
+	}
+	
+	/*
+	 * populates a distances[][] table with the Euclidean distance between points
+	 */
+	private static double[][] euclidDistances(ArrayList<SensorNode> nodes) {
+		var distances = new double[nodes.size()][nodes.size()]; //chooses size of distances[][]
+		var lat = new double[nodes.size()];
+		var lng = new double[nodes.size()];
+		for(int i = 0; i < lat.length; i++) {
+			lat[i] = nodes.get(i).getLat();
+			lng[i] = nodes.get(i).getLng();
+		}
+		
+		for(int i = 0; i < distances.length; i++) {
+			for(int j = 0; j < distances.length; j++) {
+				distances[i][j] = getEuclid(lat[i], lng[i], lat[j], lng[j]);
+			}
+		}
+		return distances;
+	}
+	
+	/*
+	 * distance between two nodes, from the table or, in sparse mode, from their coordinates
+	 */
+	double distance(int a, int b) {
+		if(distances != null) return distances[a][b];
+		return getEuclid(lat[a], lng[a], lat[b], lng[b]);
+	}
+	
+	public boolean isSparse() {
+		return distances == null;
+	}
+	
+	public ArrayList<Integer> getOrder(){
+		return order;
+	}
+	
+	public ArrayList<SensorNode> getNodeList(){
+		return nodes;
+	}
+	
+	/*
+	 * swaps the distance table the heuristics work with, keeping the current order
+	 */
+	public void setDistances(double[][] distances) {
+		this.distances = distances;
+	}
+	
+	/*
+	 * returns the length of the current order as a closed loop, measured with the distance table
+	 */
+	public double getTourLength() {
+		double length = 0;
+		for(int i = 0; i < order.size(); i++) {
+			length += distance(order.get(i), order.get((i + 1) % order.size()));
+		}
+		return length;
+	}
+	
+	public void setStartNodeFirst() {
+		int start = 0;
+		while(nodes.get(order.get(start)) != startnode) start++;
+		Collections.rotate(order, -start); //one pass, rather than moving the first node to the back one at a time
+	}
+	
+	/*
+	 * Runs a variant on insertion sort for the route, inserting each new node at the cheapest place for it until no nodes remain
+	 * 
+	 * Every node not in the route yet remembers its cheapest edge to be inserted into, and the nodes are kept in an IndexedHeap by that cost,
+	 * so an insertion only has to check the two edges it creates against each node, and look over the whole route again
+	 * only for the nodes whose cheapest edge it split. Ties go to the node earliest in the order and the edge earliest in the route,
+	 * as when every node was checked against every edge on each insertion
+	 * 
+	 * Returns a List of the indexes, so that the index of the first node to visit in the provided list of nodes is at 
+	 * index 0 in the returned list 
+	 */
+	public void tspInsertion(){
+		if(distances == null) throw new IllegalStateException("Cheapest insertion needs the distance table, use greedyTour in sparse mode");
+		int count = order.size();
+		if(count < 3) return; //nothing to choose
+		long start = Metrics.start();
+		
+		var options = new int[count - 2]; //nodes to insert, the heap's ids are indexes into this so ties go to the earliest
+		for(int i = 2; i < count; i++) options[i - 2] = order.get(i);
+		
+		int size = distances.length;
+		var next = new int[size]; //route as a linked list of nodes, node -> the node after it
+		var edgeLength = new double[size]; //distance from each node in the route to the node after it
+		var bestEdge = new int[options.length]; //start node of the cheapest edge to insert each option into
+		int head = order.get(0); //first node of the route, insertions never go before it
+		next[head] = order.get(1);
+		next[order.get(1)] = head;
+		edgeLength[head] = distances[head][next[head]];
+		edgeLength[next[head]] = distances[next[head]][head];
+		
+		var heap = new IndexedHeap(options.length);
+		for(int i = 0; i < options.length; i++) heap.add(i, cheapestEdge(options[i], head, next, edgeLength, bestEdge, i));
+		
+		while(!heap.isEmpty()) { //while there are nodes left to insert
+			int chosen = heap.poll();
+			int node = options[chosen];
+			int before = bestEdge[chosen], after = next[before];
+			next[before] = node; //splits the edge
+			next[node] = after;
+			edgeLength[before] = distances[before][node];
+			edgeLength[node] = distances[node][after];
+			
+			for(int i = 0; i < options.length; i++) {
+				if(!heap.contains(i)) continue; //already in the route
+				int u = options[i];
+				if(bestEdge[i] == before) { //its edge is gone, looks over the whole route again
+					heap.update(i, cheapestEdge(u, head, next, edgeLength, bestEdge, i));
+					continue;
+				}
+				//cost of putting u into each new edge, read along the rows of the new node and its neighbors (distances are symmetric) to stay in cache
+				var viaBefore = distances[before][u] + distances[node][u] - edgeLength[before];
+				var viaAfter = distances[node][u] + distances[after][u] - edgeLength[node];
+				var best = heap.key(i);
+				if(viaBefore < best || (viaBefore == best && comesFirst(before, bestEdge[i], head, next))) {
+					bestEdge[i] = before;
+					best = viaBefore;
+				}
+				if(viaAfter < best || (viaAfter == best && comesFirst(node, bestEdge[i], head, next))) {
+					bestEdge[i] = node;
+					best = viaAfter;
+				}
+				if(best != heap.key(i)) heap.update(i, best);
+			}
+		}
+		
+		var finalList = new ArrayList<Integer>(count);
+		int node = head;
+		do {
+			finalList.add(node);
+			node = next[node];
+		} while(node != head);
+		
+		order = finalList;
+		Metrics.stop(Metrics.Phase.construction, start);
+		Metrics.progress("Insertion Sort Done");
+	}
+	
+	/*
+	 * looks at every edge of the route, in route order, and stores the cheapest one to insert u into in bestEdge[id]
+	 * edgeLength[a] is the distance from a to next[a]
+	 * returns its cost
+	 */
+	private double cheapestEdge(int u, int head, int[] next, double[] edgeLength, int[] bestEdge, int id) {
+		var minOptVal = Double.POSITIVE_INFINITY;
+		var row = distances[u];
+		int a = head;
+		do {
+			var newVal = row[a] + row[next[a]] - edgeLength[a]; //calculates cost of insertion
+			if(newVal < minOptVal) { //saves the cheaper option
+				minOptVal = newVal;
+				bestEdge[id] = a;
+			}
+			a = next[a];
+		} while(a != head);
+		return minOptVal;
+	}
+	
+	/*
+	 * whether the edge starting at a comes before the edge starting at b in the route, only needed to break exact ties
+	 */
+	private static boolean comesFirst(int a, int b, int head, int[] next) {
+		for(int node = head; ; node = next[node]) {
+			if(node == a) return true;
+			if(node == b) return false;
+		}
+	}
+	
+	/*
+	 * Greedy edge construction for sparse mode, only looking at edges between nearest neighbors:
+	 * takes the candidate edges shortest first, keeping each one that joins two nodes with fewer than two edges
+	 * that are not already on the same chain, then links the chains into one loop, each chain to the nearest free end of another
+	 * Tours from it are a little longer than from cheapest insertion, but localSearch closes most of the gap
+	 */
+	public void greedyTour() {
+		int count = order.size();
+		if(count < 3) return; //nothing to choose
+		long start = Metrics.start();
+		var candidates = tree.nearestCandidates(TourOptimizer.defaultCandidates);
+		
+		int edgeCount = 0;
+		for(int a = 0; a < count; a++) edgeCount += candidates[a].length;
+		var edges = new long[edgeCount]; //length as float bits (which sort like the lengths) in the high half, the index of the edge in the low half
+		var ends = new int[edgeCount * 2];
+		edgeCount = 0;
+		for(int a = 0; a < count; a++) {
+			for(int b : candidates[a]) {
+				if(b < a && contains(candidates[b], a)) continue; //already taken from b's list
+				ends[edgeCount * 2] = a;
+				ends[edgeCount * 2 + 1] = b;
+				edges[edgeCount] = ((long) Float.floatToIntBits((float) distance(a, b)) << 32) | edgeCount;
+				edgeCount++;
+			}
+		}
+		Arrays.sort(edges, 0, edgeCount);
+		
+		var links = new int[count * 2]; //the up to two nodes each node is joined to, -1 for none
+		Arrays.fill(links, -1);
+		var chain = new int[count]; //union find over the chains
+		for(int i = 0; i < count; i++) chain[i] = i;
+		for(int e = 0; e < edgeCount; e++) {
+			int edge = (int) edges[e];
+			int a = ends[edge * 2], b = ends[edge * 2 + 1];
+			if(links[a * 2 + 1] >= 0 || links[b * 2 + 1] >= 0) continue; //a node already has two edges
+			int rootA = root(chain, a), rootB = root(chain, b);
+			if(rootA == rootB) continue; //would close a loop early
+			chain[rootA] = rootB;
+			links[a * 2 + (links[a * 2] < 0 ? 0 : 1)] = b;
+			links[b * 2 + (links[b * 2] < 0 ? 0 : 1)] = a;
+		}
+		
+		//the free ends, a lone node is both ends of its chain, so it appears once
+		var freeEnds = new ArrayList<Integer>();
+		for(int i = 0; i < count; i++) {
+			if(links[i * 2 + 1] < 0) freeEnds.add(i);
+		}
+		
+		var finalList = new ArrayList<Integer>(count);
+		var used = new boolean[count]; //whether a node's chain is on the tour yet
+		int end = freeEnds.get(0);
+		while(true) {
+			//walks the chain from end to its other end
+			int previous = -1, node = end;
+			while(node >= 0) {
+				finalList.add(node);
+				used[node] = true;
+				int next = links[node * 2] != previous ? links[node * 2] : links[node * 2 + 1];
+				previous = node;
+				node = next;
+			}
+			//the nearest free end of a chain not yet on the tour, the chains are few so they are simply all looked at
+			int nearest = -1;
+			double nearestDistance = Double.POSITIVE_INFINITY;
+			for(int candidate : freeEnds) {
+				if(used[candidate]) continue;
+				var d = distance(previous, candidate);
+				if(d < nearestDistance) {
+					nearest = candidate;
+					nearestDistance = d;
+				}
+			}
+			if(nearest < 0) break;
+			end = nearest;
+		}
+		
+		order = finalList;
+		Metrics.stop(Metrics.Phase.construction, start);
+		Metrics.progress("Greedy Tour Done");
+	}
+	
+	//follows the union find links to a chain's root, halving the path on the way
+	private static int root(int[] chain, int node) {
+		while(chain[node] != node) {
+			chain[node] = chain[chain[node]];
+			node = chain[node];
+		}
+		return node;
+	}
+	
+	private static boolean contains(int[] list, int value) {
+		for(int item : list) if(item == value) return true;
+		return false;
+	}
+	
+	/*
+	 * Heuristic to attempt to improve path
+	 * keeps swapping nodes until it can't be improved by swapping two nodes
+	 */
+	public void swapHeuristic(){
+		long start = Metrics.start();
+		boolean better = true;
+		while(better) {
+			better = false;
+			for(int i = 0; i < order.size(); i++) {
+				if(trySwap(i)) {
+					better = true; //variable to swap with next on list
+				}
+			}
+		}
+		Metrics.stop(Metrics.Phase.swap, start);
+		Metrics.progress("Swap Heuristic Done");
+	}
+	
+	/*
+	 * checks to see if swapping the entered index of order and the next index of order is a good idea
+	 * if so, swaps and returns true
+	 * otherwise returns false
+	 */
+	private boolean trySwap(int orderIndex) { 
+		int preindex = order.get((order.size() + orderIndex - 1) % order.size()); // node connecting to original
+		int index = order.get(orderIndex); //original node
+		int postindex = order.get((order.size() + orderIndex + 1) % order.size()); //node to swap with
+		int postpostindex = order.get((order.size() + orderIndex + 2) % order.size()); //node connecting to node to swap with
+		double swap = distance(preindex, postindex) + distance(postpostindex, index); // value of the new connections formed
+		double noSwap = distance(preindex, index) + distance(postindex, postpostindex); //value of old connections lost
+		
+		if(swap < noSwap) { //if the swap is good, swaps them
+			int temp = order.get(orderIndex);
+			order.set(orderIndex, order.get((orderIndex + 1) % order.size()));
+			order.set((orderIndex + 1) % order.size(), temp);
+			
+			return true;
+		}
+		else return false;
+	}
+	
+	/*
+	 * Heuristic that reverses subsections of the list until no more reverses will improve the list
+	 */
+	public void twoOptHeuristic() {
+		long start = Metrics.start();
+		boolean better = true;
+		while(better) {
+			better = false;
+			for(int j = 0; j < order.size() - 1; j++) {
+				for(int i = 0; i < j; i++) {
+					if(tryReverse(i,j)) { //i and j hold the endpoints of the sublist that is considering being reversed
+						better = true;
+					}
+				}
+			}
+		}
+		Metrics.stop(Metrics.Phase.twoOpt, start);
+		Metrics.progress("Two-Opt Heuristic Done");
+	}
+	
+	/*
+	 * Tries reversing the orders between orderi and orderj
+	 * Checks if it is more efficient to reverse them
+	 * If so, reverses them and returns true
+	 * otherwise, returns false
+	 */
+	private boolean tryReverse(int orderi, int orderj) {
+		int preI = order.get((order.size() + orderi - 1) % order.size()); //the node that attaches to i and will be changed
+		int i = order.get(orderi); 
+		int j = order.get(orderj);
+		int postj = order.get((order.size() + orderj + 1) % order.size()); //the node that attaches to j and will be changed
+		
+		double swap = distance(preI, j) + distance(i, postj); //the cost of the two connections if swapped
+		double noSwap = distance(preI, i) + distance(j, postj); //the cost of the two changed connections if not swapped
+		
+		if(swap < noSwap) {
+			var tempList = order.subList(orderi, orderj + 1); //temporary list holding the reversed sublist
+			Collections.reverse(tempList);
+
+			for(int k = orderi; k < orderj + 1; k++) { //copies reversed sublist into appropriate location
+				order.set(k, tempList.get(k - orderi));
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	
+	/*
+	 * Improves the order with a TourOptimizer, 2-opt, Or-opt and swap moves towards each node's nearest neighbors
+	 * covers what twoOptHeuristic and swapHeuristic do, and more, in close to linear time per pass instead of quadratic
+	 */
+	public void localSearch() {
+		long start = Metrics.start();
+		var tour = new int[order.size()];
+		for(int i = 0; i < tour.length; i++) tour[i] = order.get(i);
+		
+		var optimizer = new TourOptimizer(this::distance, candidates(), tour);
+		optimizer.optimize();
+		
+		order = new ArrayList<Integer>(tour.length);
+		for(int node : optimizer.getTour()) order.add(node);
+		Metrics.stop(Metrics.Phase.localSearch, start);
+		if(Metrics.verbose) Metrics.progress("Local Search Done, " + optimizer.getMovesMade() + " moves");
+	}
+	
+	/*
+	 * Improves the order with a MultiStartOptimizer, restarts of kicks and local search spread over all cores
+	 * the same seed and kick budget always give the same order, a deadline (System.nanoTime, 0 for none) may cut it short
+	 */
+	public void multiStart(long seed, int restarts, int kicks, long deadline) {
+		long start = Metrics.start();
+		var tour = new int[order.size()];
+		for(int i = 0; i < tour.length; i++) tour[i] = order.get(i);
+		
+		var best = new MultiStartOptimizer(this::distance, candidates(), tour).optimize(seed, restarts, kicks, deadline);
+		
+		order = new ArrayList<Integer>(best.length);
+		for(int node : best) order.add(node);
+		Metrics.stop(Metrics.Phase.multiStart, start);
+		if(Metrics.verbose) Metrics.progress("Multi-start Done, best of " + restarts + " restarts");
+	}
+	
+	/*
+	 * each node's nearest neighbors, from the table or, in sparse mode, from the KdTree
+	 */
+	private int[][] candidates() {
+		if(distances != null) return TourOptimizer.nearestCandidates(distances, TourOptimizer.defaultCandidates);
+		return tree.nearestCandidates(TourOptimizer.defaultCandidates);
+	}
+	
+	/*
+	 * Calculates Euclidean distance between two points
+	 */
+	private static double getEuclid(double lat1, double lng1, double lat2, double lng2) {
+		var xDif = (lat1 - lat2) * (lat1 - lat2);
+		var yDif = (lng1 - lng2) * (lng1 - lng2);
+		return Math.sqrt(xDif + yDif);
+	}
+}
@@ -0,0 +1,36 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Wall clock time the anytime search may spend, per leg and for the whole run
+ * A leg gets its own budget, cut down to an even share of what is left of the run budget between the legs not planned yet
+ */
+final class SearchBudget {
+	private final long legNanos; //0 if legs have no budget of their own
+	private final long runEnd; //System.nanoTime() the run has to be done by, only used if hasRunBudget
+	private final boolean hasRunBudget;
+	private final AtomicInteger legsLeft; //legs that have not asked for a deadline yet
+
+	/*
+	 * takes the budgets in milliseconds (0 for none), the System.nanoTime() the run started at and how many legs the run plans
+	 */
+	public SearchBudget(long legMillis, long runMillis, long runStart, int legCount) {
+		this.legNanos = legMillis * 1_000_000;
+		this.hasRunBudget = runMillis > 0;
+		this.runEnd = runStart + runMillis * 1_000_000;
+		this.legsLeft = new AtomicInteger(Math.max(legCount, 1));
+	}
+
+	/*
+	 * called once at the start of each leg
+	 * returns the System.nanoTime() the leg's search should stop improving at, Long.MAX_VALUE if there is no budget
+	 */
+	long legDeadline() {
+		long now = System.nanoTime();
+		long deadline = legNanos > 0 ? now + legNanos : Long.MAX_VALUE;
+		int legs = Math.max(legsLeft.getAndDecrement(), 1);
+		if(hasRunBudget) deadline = Math.min(deadline, now + Math.max(runEnd - now, 0) / legs);
+		return deadline;
+	}
+}
@@ -0,0 +1,327 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * Local search over a closed tour of every node, kept in an int[] with the position of each node alongside it
+ * Tries 2-opt, Or-opt (moving a run of up to 3 nodes elsewhere, either way round) and swap moves,
+ * but only towards each node's nearest neighbors (candidate lists), since a move that helps almost always adds such an edge
+ * Don't-look bits: only nodes next to an edge that changed are looked at again, so a pass costs close to linear time
+ * 2-opt reverses whichever side of the tour is shorter, in place
+ */
+final class TourOptimizer {
+
+	/*
+	 * Distance between two nodes, must be symmetric
+	 */
+	interface Distances {
+		double between(int a, int b);
+	}
+
+	final static int defaultCandidates = 10; //nearest neighbors tried for each node
+	final static int maxSegment = 3; //longest run of nodes an Or-opt move carries
+	final static double epsilon = 1e-12; //smallest gain counted as an improvement, so rounding cannot make moves cycle
+	final static int maxKick = 30; //longest run of nodes a kick moves
+
+	private final Distances distances;
+	private final int[][] candidates; //candidates[a] are a's nearest neighbors, nearest first
+	private final int n;
+	private final int[] tour; //node at each position
+	private final int[] position; //position of each node
+	private final boolean[] queued; //don't-look bits, inverted: queued nodes are still to be looked at
+	private final int[] queue; //ring buffer of nodes to look at
+	private int queueHead;
+	private int queueSize;
+	private long movesMade;
+
+	/*
+	 * takes the distances, each node's candidate list and the starting tour, which is copied
+	 */
+	public TourOptimizer(Distances distances, int[][] candidates, int[] tour) {
+		this.distances = distances;
+		this.candidates = candidates;
+		this.n = tour.length;
+		this.tour = tour.clone();
+		this.position = new int[candidates.length];
+		for(int i = 0; i < n; i++) position[this.tour[i]] = i;
+		this.queued = new boolean[candidates.length];
+		this.queue = new int[n];
+	}
+
+	/*
+	 * Builds the candidate lists of a full distance table, the k nearest other nodes of each node
+	 * keeps the k best seen so far in order while scanning each row, so a list costs n * k at worst rather than a sort
+	 */
+	static int[][] nearestCandidates(double[][] table, int k) {
+		int size = table.length;
+		k = Math.max(Math.min(k, size - 1), 0);
+		var lists = new int[size][];
+		for(int a = 0; a < size; a++) {
+			var list = new int[k];
+			int found = 0;
+			for(int b = 0; b < size; b++) {
+				if(b == a) continue;
+				double distance = table[a][b];
+				if(found == k && (k == 0 || distance >= table[a][list[k - 1]])) continue;
+				int i = found == k ? k - 1 : found++;
+				for(; i > 0 && table[a][list[i - 1]] > distance; i--) list[i] = list[i - 1];
+				list[i] = b;
+			}
+			lists[a] = list;
+		}
+		return lists;
+	}
+
+	public int[] getTour() {
+		return tour.clone();
+	}
+
+	public long getMovesMade() {
+		return movesMade;
+	}
+
+	/*
+	 * Replaces the tour with another of the same nodes, which is copied, and forgets the nodes still queued
+	 */
+	public void setTour(int[] newTour) {
+		System.arraycopy(newTour, 0, tour, 0, n);
+		for(int i = 0; i < n; i++) position[tour[i]] = i;
+		while(queueSize > 0) {
+			queued[queue[queueHead]] = false;
+			queueHead = (queueHead + 1) % n;
+			queueSize--;
+		}
+	}
+
+	/*
+	 * returns the length of the tour as a closed loop
+	 */
+	public double length() {
+		double total = 0;
+		for(int i = 0; i < n; i++) total += d(tour[i], tour[i + 1 == n ? 0 : i + 1]);
+		return total;
+	}
+
+	/*
+	 * Applies improving moves until none of the candidate moves improves the tour
+	 */
+	public void optimize() {
+		if(n < 5) return; //too few nodes for the moves to be told apart, the tour is left as it is
+		for(int i = 0; i < n; i++) push(tour[i]);
+		improve();
+	}
+
+	/*
+	 * Double bridge kick: A B C D becomes A C B D for two neighboring runs B and C of up to maxKick nodes at a random place,
+	 * a change no single 2-opt, Or-opt or swap move can undo, so improve() afterwards finds a different local optimum nearby
+	 * only the nodes at the three changed edges are queued
+	 */
+	public void kick(SplittableRandom random) {
+		if(n < 8) return;
+		int limit = Math.min(maxKick, n / 3);
+		int first = 1 + random.nextInt(limit), second = 1 + random.nextInt(limit); //lengths of B and C
+		int start = random.nextInt(n); //position of the first node of B
+		var moved = new int[first + second];
+		for(int i = 0; i < second; i++) moved[i] = tour[(start + first + i) % n];
+		for(int i = 0; i < first; i++) moved[second + i] = tour[(start + i) % n];
+		int before = prev(tour[start]), after = next(tour[(start + first + second - 1) % n]);
+		for(int i = 0; i < moved.length; i++) {
+			int p = (start + i) % n;
+			tour[p] = moved[i];
+			position[moved[i]] = p;
+		}
+		push(before, after, moved[0], moved[second - 1]);
+		push(moved[second]);
+		push(moved[moved.length - 1]);
+	}
+
+	/*
+	 * Applies improving moves around the queued nodes until none of their candidate moves improves the tour
+	 */
+	public void improve() {
+		if(n < 5) return;
+		while(queueSize > 0) {
+			int a = queue[queueHead];
+			queueHead = (queueHead + 1) % n;
+			queueSize--;
+			queued[a] = false;
+			while(twoOpt(a) || orOpt(a) || swap(a)) { //keeps working on a while it improves
+				movesMade++;
+			}
+		}
+	}
+
+	private int next(int node) {
+		int p = position[node] + 1;
+		return tour[p == n ? 0 : p];
+	}
+
+	private int prev(int node) {
+		int p = position[node] - 1;
+		return tour[p < 0 ? n - 1 : p];
+	}
+
+	private double d(int a, int b) {
+		return distances.between(a, b);
+	}
+
+	//queues a node to be looked at again, its don't-look bit is cleared
+	private void push(int node) {
+		if(queued[node]) return;
+		queued[node] = true;
+		queue[(queueHead + queueSize) % n] = node;
+		queueSize++;
+	}
+
+	private void push(int a, int b, int c, int d) {
+		push(a);
+		push(b);
+		push(c);
+		push(d);
+	}
+
+	/*
+	 * Replaces edges (a, next a) and (c, next c), or (prev a, a) and (prev c, c), with (a, c) and the edge between the other two
+	 */
+	private boolean twoOpt(int a) {
+		for(int side = 0; side < 2; side++) {
+			boolean forward = side == 0;
+			int b = forward ? next(a) : prev(a);
+			double removed = d(a, b);
+			for(int c : candidates[a]) {
+				double added = d(a, c);
+				if(added >= removed) break; //candidates are sorted, no later one can gain either
+				int e = forward ? next(c) : prev(c);
+				if(c == b || e == a) continue;
+				double gain = removed + d(c, e) - added - d(b, e);
+				if(gain <= epsilon) continue;
+
+				if(forward) reverse(position[b], position[c]); //a b ... c e becomes a c ... b e
+				else reverse(position[c], position[b]); //e c ... b a becomes e b ... c a
+				push(a, b, c, e);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Moves a run of 1 to maxSegment nodes with a at one end so that a sits next to one of its candidates
+	 */
+	private boolean orOpt(int a) {
+		if(n < maxSegment + 3) return false;
+		for(int length = 1; length <= maxSegment; length++) {
+			for(int side = 0; side < 2; side++) {
+				//the run is s1 .. s2 in tour order, a is s1 on side 0 and s2 on side 1
+				int s1 = a, s2 = a;
+				for(int i = 1; i < length; i++) {
+					if(side == 0) s2 = next(s2);
+					else s1 = prev(s1);
+				}
+				int p = prev(s1), nx = next(s2);
+				double removeGain = d(p, s1) + d(s2, nx) - d(p, nx); //shortening from taking the run out
+				int other = side == 0 ? s2 : s1; //end of the run that is not a
+
+				for(int c : candidates[a]) {
+					if(d(a, c) >= removeGain) break;
+					if(inRun(c, s1, length)) continue;
+					for(int slot = 0; slot < 2; slot++) { //between c and next c, or between prev c and c
+						int x = slot == 0 ? c : prev(c);
+						int y = slot == 0 ? next(c) : c;
+						if(inRun(x, s1, length) || inRun(y, s1, length)) continue;
+						int far = x == c ? y : x; //slot end that does not touch a
+						double gain = removeGain + d(x, y) - d(a, c) - d(other, far);
+						if(gain <= epsilon) continue;
+
+						//in tour order the run becomes x .. y with a next to c
+						boolean reversed = (x == c) != (a == s1);
+						moveRun(s1, s2, length, x, y, reversed);
+						push(p, nx, x, y);
+						push(s1);
+						push(s2);
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Exchanges the places of a and one of its candidates
+	 */
+	private boolean swap(int a) {
+		int pa = prev(a), na = next(a);
+		for(int c : candidates[a]) {
+			int pc = prev(c), nc = next(c);
+			double gain;
+			if(c == na) gain = d(pa, a) + d(c, nc) - d(pa, c) - d(a, nc); //pa a c nc becomes pa c a nc
+			else if(c == pa) gain = d(pc, c) + d(a, na) - d(pc, a) - d(c, na);
+			else gain = d(pa, a) + d(a, na) + d(pc, c) + d(c, nc) - d(pa, c) - d(c, na) - d(pc, a) - d(a, nc);
+			if(gain <= epsilon) continue;
+
+			int positionA = position[a], positionC = position[c];
+			tour[positionA] = c;
+			tour[positionC] = a;
+			position[a] = positionC;
+			position[c] = positionA;
+			push(pa, na, pc, nc);
+			push(a);
+			push(c);
+			return true;
+		}
+		return false;
+	}
+
+	//whether node is one of the length nodes from s1 onwards
+	private boolean inRun(int node, int s1, int length) {
+		return (position[node] - position[s1] + n) % n < length;
+	}
+
+	/*
+	 * Takes the run s1 .. s2 out and puts it back between x and y (y = next x), s1 nearest x unless reversed
+	 * done with three reversals on whichever side of the tour between the run and the slot is shorter
+	 */
+	private void moveRun(int s1, int s2, int length, int x, int y, boolean reversed) {
+		int nx = next(s2), p = prev(s1);
+		int after = (position[x] - position[nx] + n) % n + 1; //nodes from nx on to x
+		int before = (position[p] - position[y] + n) % n + 1; //nodes from y on to p
+		if(after <= before) { //s1..s2 nx..x y becomes nx..x s1..s2 y
+			int start = position[s1];
+			reverseExact(start, length + after);
+			reverseExact(start, after);
+			if(!reversed) reverseExact((start + after) % n, length);
+		}
+		else { //x y..p s1..s2 becomes x s1..s2 y..p
+			int start = position[y];
+			reverseExact(start, before + length);
+			reverseExact((start + length) % n, before);
+			if(!reversed) reverseExact(start, length);
+		}
+	}
+
+	/*
+	 * Reverses the tour from position i forward to position j (wrapping round), or the rest of the tour instead if that is shorter,
+	 * which gives the same closed tour travelled the other way
+	 */
+	private void reverse(int i, int j) {
+		int inner = (j - i + n) % n + 1;
+		if(inner * 2 > n) reverseExact((j + 1) % n, n - inner);
+		else reverseExact(i, inner);
+	}
+
+	//reverses count positions starting at position start, wrapping round
+	private void reverseExact(int start, int count) {
+		int left = start, right = (start + count - 1) % n;
+		for(int k = 0; k < count / 2; k++) {
+			int a = tour[left], b = tour[right];
+			tour[left] = b;
+			position[b] = left;
+			tour[right] = a;
+			position[a] = right;
+			left = left + 1 == n ? 0 : left + 1;
+			right = right == 0 ? n - 1 : right - 1;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+ * Shortest distances between sensors that go around the buildings instead of through them
+ * The graph's nodes are the sensors and the building vertices, joined wherever the straight line between two of them
+ * does not cross a building edge or cut through a building, and a shortest path around polygons only ever turns at their vertices
+ * Distances are then found with one Dijkstra run per sensor, the runs spread over the common ForkJoin pool
+ * Paths may graze building corners, so they are a lower bound on the moves a leg needs, but a much closer one than straight lines
+ */
+final class VisibilityGraph {
+
+	private final double[] x; //longitude of every graph node, sensors first, then building vertices
+	private final double[] y; //latitude
+	private final int sensorCount;
+	private final double[][] weights; //length of the straight line between two visible nodes, infinity if they cannot see each other
+
+	private final NoFlyZones zones;
+	private final int[] obstacles; //polygons that are buildings, the containment area left out
+	private final EdgeIndex edges; //edges of every polygon, the containment area included
+
+	/*
+	 * takes the sensors (start point included), the buildings and the containment area, and their edges
+	 * the containment area is recognised as the polygon the first sensor is inside of
+	 */
+	public VisibilityGraph(List<SensorNode> sensorNodeList, NoFlyZones zones, EdgeIndex edges) {
+		sensorCount = sensorNodeList.size();
+		this.zones = zones;
+		this.edges = edges;
+		var first = sensorNodeList.get(0);
+		obstacles = IntStream.range(0, zones.getPolygonCount()).filter(p -> !zones.inside(p, first.getLng(), first.getLat())).toArray();
+
+		int vertexCount = 0;
+		for(int p : obstacles) vertexCount += distinctVertices(p);
+		x = new double[sensorCount + vertexCount];
+		y = new double[sensorCount + vertexCount];
+		for(int i = 0; i < sensorCount; i++) {
+			x[i] = sensorNodeList.get(i).getLng();
+			y[i] = sensorNodeList.get(i).getLat();
+		}
+		int next = sensorCount;
+		for(int p : obstacles) {
+			for(int v = zones.starts[p]; v < zones.starts[p] + distinctVertices(p); v++) {
+				x[next] = zones.x[v];
+				y[next] = zones.y[v];
+				next++;
+			}
+		}
+
+		int n = x.length;
+		weights = new double[n][n];
+		IntStream.range(0, n).parallel().forEach(i -> { //each row only writes its own upper half, then mirrors it
+			weights[i][i] = 0;
+			for(int j = i + 1; j < x.length; j++) {
+				weights[i][j] = visible(i, j) ? Math.hypot(x[i] - x[j], y[i] - y[j]) : Double.POSITIVE_INFINITY;
+			}
+		});
+		for(int i = 0; i < n; i++) {
+			for(int j = 0; j < i; j++) weights[i][j] = weights[j][i];
+		}
+	}
+
+	public int getNodeCount() {
+		return x.length;
+	}
+
+	/*
+	 * returns the shortest distance around the buildings between every pair of sensors, indexed like the sensor list
+	 * pairs the graph cannot connect (a sensor boxed in by buildings) fall back to the straight line distance
+	 */
+	public double[][] sensorDistances() {
+		var distances = new double[sensorCount][];
+		IntStream.range(0, sensorCount).parallel().forEach(source -> {
+			var row = Arrays.copyOf(dijkstra(source), sensorCount);
+			for(int j = 0; j < sensorCount; j++) {
+				if(row[j] == Double.POSITIVE_INFINITY) row[j] = Math.hypot(x[source] - x[j], y[source] - y[j]);
+			}
+			distances[source] = row;
+		});
+		for(int i = 0; i < sensorCount; i++) { //both directions of a pair can differ by rounding, the tour code expects them equal
+			for(int j = 0; j < i; j++) distances[i][j] = distances[j][i];
+		}
+		return distances;
+	}
+
+	/*
+	 * Dijkstra over the dense weight matrix, the graph has at most a few hundred nodes so no heap is needed
+	 * returns the distance from source to every node
+	 */
+	private double[] dijkstra(int source) {
+		int n = x.length;
+		var distance = new double[n];
+		var done = new boolean[n];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		distance[source] = 0;
+		for(int step = 0; step < n; step++) {
+			int current = -1;
+			for(int i = 0; i < n; i++) {
+				if(!done[i] && (current < 0 || distance[i] < distance[current])) current = i;
+			}
+			if(distance[current] == Double.POSITIVE_INFINITY) break; //the rest cannot be reached
+			done[current] = true;
+			for(int i = 0; i < n; i++) {
+				var through = distance[current] + weights[current][i];
+				if(through < distance[i]) distance[i] = through;
+			}
+		}
+		return distance;
+	}
+
+	/*
+	 * Whether the straight line between two graph nodes stays clear of the buildings:
+	 * it may touch edges at their ends (turning round a vertex) but not cross one, and its midpoint may not be inside a building,
+	 * which rules out lines between two vertices of the same building that go through it
+	 */
+	private boolean visible(int a, int b) {
+		double ax = x[a], ay = y[a], bx = x[b], by = y[b];
+		if(!edges.isClearSight(ax, ay, bx, by)) return false;
+		double midX = (ax + bx) / 2, midY = (ay + by) / 2;
+		for(int p : obstacles) {
+			if(zones.inside(p, midX, midY)) return false;
+		}
+		return true;
+	}
+
+	//vertices of a polygon, not counting a last vertex that repeats the first to close the ring
+	private int distinctVertices(int polygon) {
+		int first = zones.starts[polygon], n = zones.starts[polygon + 1] - first;
+		if(n > 1 && zones.x[first] == zones.x[first + n - 1] && zones.y[first] == zones.y[first + n - 1]) n--;
+		return n;
+	}
+}
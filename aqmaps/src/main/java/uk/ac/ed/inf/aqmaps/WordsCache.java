@@ -0,0 +1,116 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/*
+ * What3Words location -> coordinates, kept on disk between runs since the mapping never changes
+ * The file is a list of records, each the words (length first, UTF-8), the longitude and latitude, and a CRC32 of all of that
+ * It is read into a HashMap when opened, and a lookup the server had to answer is appended as soon as it arrives
+ * A run that dies while appending leaves at most a torn last record, whose checksum does not match:
+ * the file is cut back to the last whole record the next time it is opened
+ * Safe to use from the threads the lookups complete on
+ */
+final class WordsCache implements Closeable {
+
+	private final static int maxWordsLength = 1024;
+
+	private final FileChannel channel;
+	private final HashMap<String, double[]> locations = new HashMap<String, double[]>(); //words -> {lng, lat}
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/*
+	 * opens the cache file, creating it if it does not exist
+	 * throws IOException if it cannot be read or written
+	 */
+	public WordsCache(String fileName) throws IOException {
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		var data = ByteBuffer.allocate((int) channel.size()); //a few dozen bytes a location, read in one go
+		while(data.hasRemaining()) {
+			if(channel.read(data, data.position()) < 0) break;
+		}
+		data.flip();
+
+		long whole = 0; //end of the last record that checked out
+		while(data.remaining() >= 2) {
+			int start = data.position();
+			int length = data.getShort() & 0xffff;
+			if(length > maxWordsLength || data.remaining() < length + 8 + 8 + 4) break;
+			var bytes = new byte[length];
+			data.get(bytes);
+			double lng = data.getDouble(), lat = data.getDouble();
+			int checksum = data.getInt();
+			if(checksum != checksum(data, start, length)) break;
+			locations.put(new String(bytes, StandardCharsets.UTF_8), new double[] {lng, lat});
+			whole = data.position();
+		}
+		if(whole < channel.size()) channel.truncate(whole); //drops a torn or corrupt tail
+		channel.position(whole);
+	}
+
+	/*
+	 * returns the {lng, lat} of the words, or null if they have not been looked up before, counting the hit or miss
+	 */
+	public synchronized double[] get(String words) {
+		var location = locations.get(words);
+		if(location == null) misses.incrementAndGet();
+		else hits.incrementAndGet();
+		return location;
+	}
+
+	/*
+	 * remembers the coordinates of the words, appending them to the file if they are new
+	 * throws IOException if the file cannot be written
+	 */
+	public synchronized void put(String words, double lng, double lat) throws IOException {
+		if(locations.containsKey(words)) return;
+		var bytes = words.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > maxWordsLength) throw new IOException("Words too long to cache: " + words);
+
+		var record = ByteBuffer.allocate(2 + bytes.length + 8 + 8 + 4);
+		record.putShort((short) bytes.length);
+		record.put(bytes);
+		record.putDouble(lng);
+		record.putDouble(lat);
+		record.putInt(checksum(record, 0, bytes.length));
+		record.flip();
+		while(record.hasRemaining()) channel.write(record); //one record at a time, so a crash tears at most the last one
+		locations.put(words, new double[] {lng, lat});
+	}
+
+	public int size() {
+		return locations.size();
+	}
+
+	/*
+	 * returns the lookups so far and the share answered from the cache, for the end of run report
+	 */
+	public String summary() {
+		int hit = hits.get(), total = hit + misses.get();
+		return "W3W cache: " + hit + " of " + total + " locations cached (" + (total == 0 ? 0 : Math.round(100. * hit / total)) + "% hit rate), " + size() + " known";
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	//CRC32 of the record starting at start, up to its checksum
+	private static int checksum(ByteBuffer buffer, int start, int length) {
+		var crc = new CRC32();
+		var slice = buffer.duplicate();
+		slice.position(start);
+		slice.limit(start + 2 + length + 8 + 8);
+		crc.update(slice);
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,57 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+
+import com.mapbox.geojson.Point;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for AnytimeSearch
+ */
+public class AnytimeSearchTest
+    extends TestCase
+{
+    //either side of the building in MapFixtures, so the first, inflated pass has room to take a longer way round
+    private static final Point west = Point.fromLngLat(-3.1900, 55.94435);
+    private static final Point east = Point.fromLngLat(-3.1880, 55.94436);
+
+    private final PathContext context = new PathContext(new EdgeIndex(NoFlyZones.of(MapFixtures.buildings())), null,
+            PathContext.Search.anytime, null, null);
+
+    /**
+     * A deadline that has already passed still gets the first path, found at the starting weight
+     */
+    public void testZeroBudgetReturnsFirstSolution()
+    {
+        var search = AnytimeSearch.get();
+        var first = search.search(west, east, context, System.nanoTime());
+        assertNotNull(first);
+        assertEquals(AnytimeSearch.startWeight, search.getWeight());
+        assertTrue(search.getPasses() <= 1);
+        assertReaches(first);
+    }
+
+    /**
+     * With no deadline the weight is lowered all the way to 1, and the path is never longer than the first one
+     */
+    public void testGenerousBudgetIsNoLonger()
+    {
+        var search = AnytimeSearch.get();
+        var first = new ArrayList<>(search.search(west, east, context, System.nanoTime()));
+        var best = search.search(west, east, context, Long.MAX_VALUE);
+        assertNotNull(best);
+        assertEquals(1., search.getWeight());
+        assertEquals(1 + (int) Math.ceil((AnytimeSearch.startWeight - 1.) / AnytimeSearch.weightStep), search.getPasses());
+        assertReaches(best);
+        assertTrue(best.size() <= first.size()); //every move is the same length, so fewer points is a shorter path
+    }
+
+    //starts at the start, ends within .0002 of the end
+    private static void assertReaches(ArrayList<Point> points)
+    {
+        assertEquals(west, points.get(0));
+        var last = points.get(points.size() - 1);
+        assertTrue(Math.hypot(last.longitude() - east.longitude(), last.latitude() - east.latitude()) < AnytimeSearch.reach);
+    }
+}
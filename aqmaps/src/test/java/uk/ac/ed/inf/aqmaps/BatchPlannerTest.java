@@ -0,0 +1,123 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for BatchPlanner
+ */
+public class BatchPlannerTest
+    extends TestCase
+{
+    /**
+     * Days come back in date order even when the later ones finish planning first
+     */
+    public void testResultsInDateOrder() throws InterruptedException
+    {
+        var dates = dates(8);
+        var results = BatchPlanner.planAll(dates, 3, BatchPlannerTest::sensors, (date, sensors) -> {
+            sleep(5 * (dates.size() - date.getDayOfMonth())); //earlier days plan slower
+            return 10 * date.getDayOfMonth();
+        });
+        assertEquals(dates.size(), results.size());
+        for(int i = 0; i < dates.size(); i++) {
+            var result = results.get(i);
+            assertEquals(dates.get(i), result.date);
+            assertNull(result.error);
+            assertEquals(result.date.getDayOfMonth(), result.sensors);
+            assertEquals(10 * result.date.getDayOfMonth(), result.moves);
+        }
+    }
+
+    /**
+     * A day whose fetch fails is reported in its place and not planned, and the days after it are still planned
+     */
+    public void testFailedFetchIsReported() throws InterruptedException
+    {
+        var dates = dates(6);
+        var failing = dates.get(2);
+        var planned = new AtomicInteger();
+        var results = BatchPlanner.planAll(dates, 2, date -> {
+            if(date.equals(failing)) throw new IOException("no sensors for " + date);
+            return sensors(date);
+        }, (date, sensors) -> {
+            assertFalse(date.equals(failing));
+            planned.incrementAndGet();
+            return 1;
+        });
+        assertEquals(dates.size() - 1, planned.get());
+        for(int i = 0; i < dates.size(); i++) {
+            var result = results.get(i);
+            assertEquals(dates.get(i), result.date);
+            if(result.date.equals(failing)) {
+                assertEquals("no sensors for " + failing, result.error);
+                assertEquals(0, result.moves);
+            }
+            else assertNull(result.error);
+        }
+    }
+
+    /**
+     * Failed fetches give their lookahead permits back, so a range where every fetch fails still finishes
+     */
+    public void testEveryFetchFailing() throws InterruptedException
+    {
+        var dates = dates(4 * BatchPlanner.lookaheadPerWorker);
+        var results = BatchPlanner.planAll(dates, 1, date -> { throw new IOException("down"); }, (date, sensors) -> 1);
+        assertEquals(dates.size(), results.size());
+        for(BatchPlanner.DayResult result : results) assertEquals("down", result.error);
+    }
+
+    /**
+     * The fetcher runs ahead of slow planning, but never holds more than lookaheadPerWorker days per worker
+     * that are fetched or being fetched and not yet planned
+     */
+    public void testLookaheadIsBounded() throws InterruptedException
+    {
+        int workers = 2;
+        var fetched = new AtomicInteger();
+        var done = new AtomicInteger();
+        var mostAhead = new AtomicInteger();
+        var results = BatchPlanner.planAll(dates(12), workers, date -> {
+            int ahead = fetched.incrementAndGet() - done.get(); //done is counted before the permit is given back, so this never overcounts
+            mostAhead.accumulateAndGet(ahead, Math::max);
+            return sensors(date);
+        }, (date, sensors) -> {
+            sleep(20);
+            done.incrementAndGet();
+            return 1;
+        });
+        assertEquals(12, results.size());
+        assertEquals(workers * BatchPlanner.lookaheadPerWorker, mostAhead.get());
+    }
+
+    //consecutive days from the 1st of June 2021
+    private static ArrayList<LocalDate> dates(int n)
+    {
+        var dates = new ArrayList<LocalDate>();
+        for(int i = 0; i < n; i++) dates.add(LocalDate.of(2021, 6, 1 + i));
+        return dates;
+    }
+
+    //as many sensors as the day of the month, so each result can be told apart
+    private static ArrayList<SensorNode> sensors(LocalDate date)
+    {
+        var sensors = new ArrayList<SensorNode>();
+        for(int i = 0; i < date.getDayOfMonth(); i++) sensors.add(new SensorNode("a.b." + i, 100, "50", null, null, -3.188, 55.944));
+        return sensors;
+    }
+
+    private static void sleep(long millis)
+    {
+        try {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for EdgeIndex
+ */
+public class EdgeIndexTest 
+    extends TestCase
+{
+    /**
+     * The primitive intersection test agrees with Line2D, including touching and collinear segments
+     */
+    public void testLinesIntersectMatchesLine2D()
+    {
+        var random = new Random(7);
+        for(int i = 0; i < 200000; i++) {
+            var c = new double[8];
+            for(int k = 0; k < 8; k++) c[k] = random.nextInt(6); //small integer grid, so touching and collinear cases are common
+            if(random.nextBoolean()) { //and some realistic coordinates
+                for(int k = 0; k < 8; k += 2) {
+                    c[k] = -3.19 + random.nextDouble() * .001;
+                    c[k + 1] = 55.944 + random.nextDouble() * .001;
+                }
+            }
+            var expected = new Line2D.Double(c[4], c[5], c[6], c[7]).intersectsLine(new Line2D.Double(c[0], c[1], c[2], c[3]));
+            assertEquals(expected, EdgeIndex.linesIntersect(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]));
+        }
+    }
+
+    /**
+     * Moves checked through the grid give the same answer as checking every edge
+     */
+    public void testValidMoveMatchesEveryEdge()
+    {
+        var random = new Random(11);
+        var buildings = new ArrayList<double[][]>();
+        for(int b = 0; b < 30; b++) {
+            double x = random.nextDouble() * .008, y = random.nextDouble() * .004;
+            int n = 3 + random.nextInt(6);
+            var ring = new double[n + 1][];
+            for(int i = 0; i < n; i++) {
+                double angle = 2 * Math.PI * i / n;
+                ring[i] = new double[] {x + .0004 * Math.cos(angle), y + .0004 * Math.sin(angle)};
+            }
+            ring[n] = ring[0];
+            buildings.add(ring);
+        }
+        buildings.add(new double[][] {{0, 0}, {.008, 0}, {.008, .004}, {0, .004}, {0, 0}});
+        var index = new EdgeIndex(buildings);
+
+        for(int i = 0; i < 50000; i++) {
+            double x = random.nextDouble() * .0084 - .0002, y = random.nextDouble() * .0044 - .0002;
+            double angle = random.nextInt(36) * Math.PI / 18;
+            double toX = x + .0003 * Math.cos(angle), toY = y + .0003 * Math.sin(angle);
+            boolean expected = true;
+            for(double[][] coord : buildings) {
+                for(int a = 0, b = coord.length - 1; a < coord.length; b = a++) {
+                    if(new Line2D.Double(coord[a][0], coord[a][1], coord[b][0], coord[b][1]).intersectsLine(new Line2D.Double(x, y, toX, toY))) expected = false;
+                }
+            }
+            assertEquals(expected, index.isValidMove(x, y, toX, toY));
+        }
+    }
+
+    /**
+     * Checking a batch of moves at once gives the same mask as checking each move, including moves that touch or run along an edge
+     */
+    public void testValidMovesMatchesValidMove()
+    {
+        var random = new Random(13);
+        var buildings = new ArrayList<double[][]>();
+        for(int b = 0; b < 40; b++) { //small integer grid, so moves often end on a vertex or run along an edge
+            int x = random.nextInt(20), y = random.nextInt(20), w = 1 + random.nextInt(3), h = 1 + random.nextInt(3);
+            buildings.add(new double[][] {{x, y}, {x + w, y}, {x + w, y + h}, {x, y + h}, {x, y}});
+        }
+        buildings.add(new double[][] {{-3.1880, 55.9440}, {-3.1870, 55.9443}, {-3.1875, 55.9448}, {-3.1880, 55.9440}});
+        var index = new EdgeIndex(buildings);
+
+        var toX = new double[LatticeGraph.directions];
+        var toY = new double[LatticeGraph.directions];
+        for(int i = 0; i < 20000; i++) {
+            double x, y, length;
+            if(random.nextBoolean()) {
+                x = random.nextInt(24);
+                y = random.nextInt(24);
+                length = 1 + random.nextInt(2);
+            }
+            else {
+                x = -3.1885 + random.nextDouble() * .002;
+                y = 55.9435 + random.nextDouble() * .0015;
+                length = .0003;
+            }
+            long moves = random.nextLong() | random.nextLong(); //most moves, some left out
+            long expected = 0;
+            for(int d = 0; d < LatticeGraph.directions; d++) {
+                toX[d] = d % 9 == 0 ? x + length * (d % 2 == 0 ? 1 : -1) : x + length * Math.cos(d * Math.PI / 18); //some exactly axis aligned
+                toY[d] = d % 9 == 0 ? y : y + length * Math.sin(d * Math.PI / 18);
+                if((moves >>> d & 1) != 0 && index.isValidMove(x, y, toX[d], toY[d])) expected |= 1L << d;
+            }
+            moves &= (1L << LatticeGraph.directions) - 1;
+            assertEquals(expected, index.validMoves(x, y, toX, toY, moves));
+        }
+    }
+
+    /**
+     * Lines of any length checked through the grid cross an edge exactly when one of all the edges crosses them
+     */
+    public void testClearSightMatchesEveryEdge()
+    {
+        var random = new Random(17);
+        var buildings = new ArrayList<double[][]>();
+        for(int b = 0; b < 60; b++) {
+            double x = random.nextDouble() * .008, y = random.nextDouble() * .004, w = .0001 + random.nextDouble() * .0008;
+            buildings.add(new double[][] {{x, y}, {x + w, y}, {x + w, y + w}, {x, y + w}, {x, y}});
+        }
+        var index = new EdgeIndex(buildings);
+
+        var vertices = new ArrayList<double[]>();
+        for(double[][] coord : buildings) for(double[] vertex : coord) vertices.add(vertex);
+        for(int i = 0; i < 20000; i++) {
+            double[] from, to;
+            if(random.nextBoolean()) { //between building corners, as the visibility graph asks
+                from = vertices.get(random.nextInt(vertices.size()));
+                to = vertices.get(random.nextInt(vertices.size()));
+            }
+            else { //anywhere, partly off the grid
+                from = new double[] {random.nextDouble() * .01 - .001, random.nextDouble() * .006 - .001};
+                to = new double[] {random.nextDouble() * .01 - .001, random.nextDouble() * .006 - .001};
+            }
+            boolean expected = true;
+            for(double[][] coord : buildings) {
+                for(int a = 0, b = coord.length - 1; a < coord.length; b = a++) {
+                    if(EdgeIndex.crosses(from[0], from[1], to[0], to[1], coord[a][0], coord[a][1], coord[b][0], coord[b][1])) expected = false;
+                }
+            }
+            assertEquals(expected, index.isClearSight(from[0], from[1], to[0], to[1]));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for FleetPlanner
+ */
+public class FleetPlannerTest 
+    extends TestCase
+{
+    /**
+     * Every sensor goes to exactly one drone, no drone takes more than its share, and each list starts with its drone
+     */
+    public void testPartitionIsBalancedAndComplete()
+    {
+        var random = new Random(9);
+        for(int trial = 0; trial < 30; trial++) {
+            int n = random.nextInt(200), drones = 1 + random.nextInt(5);
+            var sensors = new ArrayList<SensorNode>();
+            for(int i = 0; i < n; i++) sensors.add(new SensorNode("w" + i, 0, "0", null, null, random.nextDouble(), random.nextDouble()));
+            var starts = new ArrayList<SensorNode>();
+            for(int k = 0; k < drones; k++) starts.add(new SensorNode(null, 0, null, "#ffffff", "cross", random.nextDouble(), random.nextDouble()));
+
+            var lists = FleetPlanner.partition(sensors, starts);
+            assertEquals(drones, lists.size());
+            var seen = new HashSet<SensorNode>();
+            for(int k = 0; k < drones; k++) {
+                var list = lists.get(k);
+                assertSame(starts.get(k), list.get(0));
+                assertTrue(list.size() - 1 <= (n + drones - 1) / drones);
+                for(int i = 1; i < list.size(); i++) assertTrue(seen.add(list.get(i)));
+            }
+            assertEquals(n, seen.size());
+        }
+    }
+
+    /**
+     * Two drones at opposite ends of a line of sensors each take the half nearer to them
+     */
+    public void testDronesTakeTheirOwnSide()
+    {
+        var sensors = new ArrayList<SensorNode>();
+        for(int i = 0; i < 20; i++) sensors.add(new SensorNode("w" + i, 0, "0", null, null, i, 0));
+        var starts = new ArrayList<SensorNode>();
+        starts.add(new SensorNode(null, 0, null, "#ffffff", "cross", -1, 0));
+        starts.add(new SensorNode(null, 0, null, "#ffffff", "cross", 20, 0));
+
+        var lists = FleetPlanner.partition(sensors, starts);
+        for(int i = 1; i < lists.get(0).size(); i++) assertTrue(lists.get(0).get(i).getLng() < 10);
+        for(int i = 1; i < lists.get(1).size(); i++) assertTrue(lists.get(1).get(i).getLng() >= 10);
+    }
+}
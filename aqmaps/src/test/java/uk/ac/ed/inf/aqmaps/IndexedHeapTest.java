@@ -0,0 +1,68 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for IndexedHeap
+ */
+public class IndexedHeapTest 
+    extends TestCase
+{
+    /**
+     * Polls come out in key order, ties by smaller id
+     */
+    public void testPollOrder()
+    {
+        var heap = new IndexedHeap(4);
+        heap.add(3, 2.0);
+        heap.add(1, 5.0);
+        heap.add(7, 2.0);
+        heap.add(0, 1.0);
+        assertEquals(0, heap.poll());
+        assertEquals(3, heap.poll());
+        assertEquals(7, heap.poll());
+        assertEquals(1, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    /**
+     * Lowering and raising keys in place keeps the heap ordered
+     */
+    public void testUpdateMatchesNaiveMinimum()
+    {
+        var random = new Random(42);
+        int ids = 200;
+        var heap = new IndexedHeap(8);
+        var keys = new double[ids];
+        var queued = new boolean[ids];
+
+        for(int step = 0; step < 5000; step++) {
+            int id = random.nextInt(ids);
+            double key = random.nextInt(50);
+            switch(random.nextInt(4)) {
+            case 0:
+                heap.addOrUpdate(id, key);
+                keys[id] = key;
+                queued[id] = true;
+                break;
+            case 1:
+                if(queued[id]) { //update only, never queues
+                    heap.update(id, key);
+                    keys[id] = key;
+                }
+                break;
+            default:
+                if(heap.isEmpty()) break;
+                int best = -1;
+                for(int i = 0; i < ids; i++) {
+                    if(queued[i] && (best < 0 || keys[i] < keys[best])) best = i;
+                }
+                assertEquals(best, heap.poll());
+                queued[best] = false;
+            }
+            for(int i = 0; i < ids; i++) assertEquals(queued[i], heap.contains(i));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for KdTree
+ */
+public class KdTreeTest 
+    extends TestCase
+{
+    /**
+     * The nearest points match a scan over every point, on random points and on a grid full of equal coordinates
+     */
+    public void testNearestMatchesScan()
+    {
+        var random = new Random(5);
+        for(int trial = 0; trial < 40; trial++) {
+            int n = 1 + random.nextInt(300);
+            boolean grid = trial % 2 == 0;
+            var x = new double[n];
+            var y = new double[n];
+            for(int i = 0; i < n; i++) {
+                x[i] = grid ? random.nextInt(8) : random.nextDouble();
+                y[i] = grid ? random.nextInt(8) : random.nextDouble();
+            }
+            var tree = new KdTree(x, y);
+            int k = 1 + random.nextInt(12);
+            for(int i = 0; i < n; i++) {
+                var found = tree.nearest(i, k);
+                assertEquals(Math.min(k, n - 1), found.length);
+                //the found distances have to be the smallest ones, in order, equal ones may come in any order
+                var all = new double[n - 1];
+                for(int j = 0, m = 0; j < n; j++) if(j != i) all[m++] = squared(x, y, i, j);
+                Arrays.sort(all);
+                for(int f = 0; f < found.length; f++) {
+                    assertTrue(found[f] != i);
+                    assertEquals(all[f], squared(x, y, i, found[f]), 0);
+                }
+            }
+        }
+    }
+
+    private static double squared(double[] x, double[] y, int a, int b)
+    {
+        var dx = x[a] - x[b];
+        var dy = y[a] - y[b];
+        return dx * dx + dy * dy;
+    }
+}
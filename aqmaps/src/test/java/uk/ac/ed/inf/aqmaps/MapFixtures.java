@@ -0,0 +1,42 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A small synthetic map shared by the flight planning tests: the confinement area with one building in it, and sensors spread around it
+ */
+final class MapFixtures
+{
+    private static final double[][] confinement = {{-3.192473, 55.946233}, {-3.184319, 55.946233}, {-3.184319, 55.942617}, {-3.192473, 55.942617}, {-3.192473, 55.946233}};
+
+    private MapFixtures()
+    {
+    }
+
+    /**
+     * The confinement area and one building, a new list each time so a test can add to it
+     */
+    static ArrayList<double[][]> buildings()
+    {
+        var buildings = new ArrayList<double[][]>();
+        buildings.add(confinement);
+        buildings.add(new double[][] {{-3.1895, 55.9447}, {-3.1885, 55.9447}, {-3.1885, 55.9440}, {-3.1895, 55.9440}, {-3.1895, 55.9447}});
+        return buildings;
+    }
+
+    /**
+     * n sensors over the whole confinement area, clear of its edges and the building, named prefix then their number
+     */
+    static ArrayList<SensorNode> spread(String prefix, int n, long seed)
+    {
+        var random = new Random(seed);
+        var nodes = new ArrayList<SensorNode>();
+        while(nodes.size() < n) {
+            double lng = -3.1922 + random.nextDouble() * .0076, lat = 55.9428 + random.nextDouble() * .0032;
+            if(lng > -3.1897 && lng < -3.1883 && lat > 55.9438 && lat < 55.9449) continue; //not in or right by the building
+            nodes.add(new SensorNode(prefix + nodes.size(), 0, "0", null, null, lng, lat));
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,93 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.google.gson.JsonParser;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for Metrics
+ */
+public class MetricsTest
+    extends TestCase
+{
+    @Override
+    protected void setUp()
+    {
+        Metrics.reset();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        Metrics.enabled = false;
+        Metrics.reset();
+    }
+
+    /**
+     * Nothing is recorded while the metrics are off, and the report has what was recorded once they are on
+     */
+    public void testReportOnlyCountsWhileEnabled() throws IOException
+    {
+        var file = Files.createTempFile("report", ".json");
+        try {
+            Metrics.configure(Options.parse(new String[0], 0));
+            assertEquals(0, Metrics.start());
+            Metrics.count(Metrics.Counter.collisionTests, 1000);
+            Metrics.leg("acid.chair.butter", PathContext.Search.astar, 0, 5, 10, 100);
+
+            Metrics.configure(Options.parse(new String[] {"--report=" + file}, 0));
+            assertTrue(Metrics.enabled);
+            long start = Metrics.start();
+            Metrics.count(Metrics.Counter.collisionTests);
+            Metrics.count(Metrics.Counter.collisionTests, 2);
+            Metrics.stop(Metrics.Phase.twoOpt, start);
+            Metrics.leg("baked.cups.dims", PathContext.Search.bidirectional, Metrics.start(), 7, 12, 150);
+            Metrics.writeReport(file.toString(), 1000000);
+
+            var report = JsonParser.parseString(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getAsJsonObject();
+            assertEquals(1.0, report.get("wallMs").getAsDouble(), 0);
+            assertEquals(1, report.getAsJsonObject("phases").getAsJsonObject("twoOpt").get("calls").getAsInt());
+            assertEquals(1, report.getAsJsonObject("phases").getAsJsonObject("leg").get("calls").getAsInt());
+            assertEquals(3, report.getAsJsonObject("counters").get("collisionTests").getAsLong());
+            assertEquals(12, report.getAsJsonObject("counters").get("expansions").getAsLong());
+            var legs = report.getAsJsonArray("legs");
+            assertEquals(1, legs.size());
+            assertEquals("baked.cups.dims", legs.get(0).getAsJsonObject().get("to").getAsString());
+            assertEquals("bidirectional", legs.get(0).getAsJsonObject().get("search").getAsString());
+            assertEquals(7, legs.get(0).getAsJsonObject().get("moves").getAsInt());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Past maxLegs the legs are still timed and counted, but no longer kept for the report
+     */
+    public void testKeepsAtMostMaxLegs() throws IOException
+    {
+        var file = Files.createTempFile("report", ".json");
+        try {
+            Metrics.configure(Options.parse(new String[] {"--report=" + file}, 0));
+            for(int i = 0; i < Metrics.maxLegs + 10; i++) Metrics.leg(null, PathContext.Search.astar, Metrics.start(), 1, 1, 1);
+            Metrics.writeReport(file.toString(), 1000000);
+
+            var report = JsonParser.parseString(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getAsJsonObject();
+            assertEquals(Metrics.maxLegs + 10, report.getAsJsonObject("phases").getAsJsonObject("leg").get("calls").getAsInt());
+            assertEquals(Metrics.maxLegs, report.getAsJsonArray("legs").size());
+
+            Metrics.reset();
+            Metrics.writeReport(file.toString(), 1000000);
+            report = JsonParser.parseString(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getAsJsonObject();
+            assertEquals(0, report.getAsJsonArray("legs").size());
+            assertEquals(0, report.getAsJsonObject("phases").getAsJsonObject("leg").get("calls").getAsInt());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
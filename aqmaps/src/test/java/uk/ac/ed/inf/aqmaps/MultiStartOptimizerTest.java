@@ -0,0 +1,43 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for MultiStartOptimizer
+ */
+public class MultiStartOptimizerTest 
+    extends TestCase
+{
+    /**
+     * The same seed gives the same tour, which visits every node once and is no longer than plain local search gets
+     */
+    public void testSeededAndNoWorseThanLocalSearch()
+    {
+        var random = new Random(11);
+        for(int trial = 0; trial < 10; trial++) {
+            int n = 8 + random.nextInt(150);
+            var table = TourFixtures.randomPlane(random, n);
+            var start = new int[n];
+            for(int i = 0; i < n; i++) start[i] = i;
+            var candidates = TourOptimizer.nearestCandidates(table, TourOptimizer.defaultCandidates);
+
+            var first = new MultiStartOptimizer((a, b) -> table[a][b], candidates, start).optimize(trial, 4, 50, 0);
+            var second = new MultiStartOptimizer((a, b) -> table[a][b], candidates, start).optimize(trial, 4, 50, 0);
+            assertTrue(Arrays.equals(first, second));
+
+            var seen = new boolean[n];
+            for(int node : first) {
+                assertFalse(seen[node]);
+                seen[node] = true;
+            }
+            assertEquals(n, first.length);
+
+            var local = new TourOptimizer((a, b) -> table[a][b], candidates, start);
+            local.optimize();
+            assertTrue(TourFixtures.length(table, first) <= local.length() + 1e-9);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for NoFlyZones
+ */
+public class NoFlyZonesTest 
+    extends TestCase
+{
+    private final static String geoJson = "{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"properties\":{},"
+            + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[-3.19000004,55.943],[-3.189,55.943],[-3.189,55.94400006],[-3.19000004,55.943]]]}}]}";
+
+    /**
+     * Buildings come first with their coordinates rounded as GeoJSON output rounds them, then the containment area
+     */
+    public void testParseRoundsAndAddsContainmentArea() throws IOException
+    {
+        var zones = NoFlyZones.parse(geoJson.getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, zones.getPolygonCount());
+
+        assertEquals(4, zones.starts[1]);
+        assertEquals(-3.19, zones.x[0], 0);
+        assertEquals(55.9440001, zones.y[2], 0);
+        assertEquals(FileManager.minLon, zones.x[4], 0);
+        assertEquals(FileManager.maxLat, zones.y[6], 0);
+
+        assertEquals(-3.19, zones.bounds[0], 0);
+        assertEquals(55.943, zones.bounds[1], 0);
+        assertEquals(-3.189, zones.bounds[2], 0);
+        assertEquals(55.9440001, zones.bounds[3], 0);
+    }
+
+    /**
+     * Only the polygons added, removed or moved show up as changed, whatever order the polygons come in
+     */
+    public void testChangedSince()
+    {
+        double[][] kept = {{0, 0}, {1, 0}, {1, 1}, {0, 0}};
+        double[][] moved = {{2, 2}, {3, 2}, {3, 3}, {2, 2}};
+        double[][] movedTo = {{2, 2}, {3, 2}, {3, 4}, {2, 2}};
+        double[][] added = {{5, 5}, {6, 5}, {6, 7}, {5, 5}};
+        var before = NoFlyZones.of(List.of(kept, moved));
+        var after = NoFlyZones.of(List.of(added, movedTo, kept));
+
+        var changed = after.changedSince(before);
+        assertEquals(3, changed.size());
+        assertTrue(Arrays.equals(new double[] {5, 5, 6, 7}, changed.get(0)));
+        assertTrue(Arrays.equals(new double[] {2, 2, 3, 4}, changed.get(1)));
+        assertTrue(Arrays.equals(new double[] {2, 2, 3, 3}, changed.get(2)));
+        assertTrue(before.changedSince(NoFlyZones.of(List.of(moved, kept))).isEmpty());
+    }
+
+    /**
+     * Points are inside the building they fall in and the containment area, and only there
+     */
+    public void testInside() throws IOException
+    {
+        var zones = NoFlyZones.parse(geoJson.getBytes(StandardCharsets.UTF_8));
+        assertTrue(zones.inside(0, -3.1893, 55.9432));
+        assertTrue(zones.inside(1, -3.1893, 55.9432));
+        assertFalse(zones.inside(0, -3.1897, 55.9438)); //inside the bounding box, outside the triangle
+        assertFalse(zones.inside(0, -3.185, 55.9432));
+        assertTrue(zones.inside(1, -3.185, 55.9432));
+    }
+
+    /**
+     * Anything but polygons is an IOException rather than a crash further on
+     */
+    public void testRejectsOtherGeometry()
+    {
+        try {
+            NoFlyZones.parse("{\"features\":[{\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]}}]}".getBytes(StandardCharsets.UTF_8));
+            fail();
+        }
+        catch(IOException e) {
+            assertTrue(e.getMessage().contains("Point"));
+        }
+    }
+
+    /**
+     * Missing or mistyped members are an IOException naming what was wrong
+     */
+    public void testRejectsMissingMembers()
+    {
+        var malformed = new String[] {
+            "[]",
+            "{\"type\":\"FeatureCollection\"}",
+            "{\"features\":[{\"type\":\"Feature\"}]}",
+            "{\"features\":[{\"geometry\":{\"coordinates\":[]}}]}",
+            "{\"features\":[{\"geometry\":{\"type\":\"Polygon\"}}]}",
+            "{\"features\":[{\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[]}}]}",
+            "{\"features\":[{\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[1]]]}}]}",
+            "{\"features\":[{\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[1,\"a\"]]]}}]}",
+            "{\"features\":[{\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":[1]}}]}",
+            "{\"features\":"
+        };
+        for(String geoJson : malformed) {
+            try {
+                NoFlyZones.parse(geoJson.getBytes(StandardCharsets.UTF_8));
+                fail(geoJson);
+            }
+            catch(IOException e) {
+                assertTrue(e.getMessage().startsWith("Malformed no-fly-zones GeoJSON"));
+            }
+        }
+    }
+
+    /**
+     * load saves the zones and memory-maps them on the next run, and a cache file saved for other GeoJSON,
+     * or cut short, is parsed and saved again rather than read
+     */
+    public void testCacheRoundTrip() throws IOException
+    {
+        var web = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        web.createContext("/buildings/no-fly-zones.geojson", exchange -> {
+            var bytes = geoJson.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try(var body = exchange.getResponseBody()) {
+                body.write(bytes);
+            }
+        });
+        web.start();
+        var cacheDir = Files.createTempDirectory("zones");
+        try {
+            var port = Integer.toString(web.getAddress().getPort());
+            var parsed = NoFlyZones.parse(geoJson.getBytes(StandardCharsets.UTF_8));
+            assertSameZones(parsed, NoFlyZones.load(port, cacheDir.toString()));
+            java.nio.file.Path file;
+            try(var files = Files.newDirectoryStream(cacheDir, "*.bin")) {
+                file = files.iterator().next();
+            }
+            var saved = Files.readAllBytes(file);
+
+            var changed = saved.clone(); //the first vertex moved in the file, so only reading it gives the moved vertex
+            ByteBuffer.wrap(changed).putDouble(xOffset(parsed), -3.5);
+            Files.write(file, changed);
+            assertEquals(-3.5, NoFlyZones.load(port, cacheDir.toString()).x[0], 0);
+
+            changed[4] ^= 1; //the digest of other GeoJSON
+            Files.write(file, changed);
+            assertSameZones(parsed, NoFlyZones.load(port, cacheDir.toString()));
+            assertTrue(Arrays.equals(saved, Files.readAllBytes(file)));
+
+            Files.write(file, Arrays.copyOf(saved, saved.length - 8)); //cut short
+            assertSameZones(parsed, NoFlyZones.load(port, cacheDir.toString()));
+            assertTrue(Arrays.equals(saved, Files.readAllBytes(file)));
+        }
+        finally {
+            web.stop(0);
+            try(var files = Files.newDirectoryStream(cacheDir)) {
+                for(java.nio.file.Path f : files) Files.delete(f);
+            }
+            Files.delete(cacheDir);
+        }
+    }
+
+    //the polygons, vertices and bounds of the two are the same
+    private static void assertSameZones(NoFlyZones expected, NoFlyZones actual)
+    {
+        assertTrue(Arrays.equals(expected.starts, actual.starts));
+        assertTrue(Arrays.equals(expected.bounds, actual.bounds));
+        assertTrue(Arrays.equals(expected.x, actual.x));
+        assertTrue(Arrays.equals(expected.y, actual.y));
+    }
+
+    //where x[0] is in a cache file: magic, digest, polygon and vertex counts, starts, then bounds
+    private static int xOffset(NoFlyZones zones)
+    {
+        return 4 + 32 + 4 + 4 + zones.starts.length * 4 + zones.bounds.length * 8;
+    }
+}
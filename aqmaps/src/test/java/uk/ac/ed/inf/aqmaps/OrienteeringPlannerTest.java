@@ -0,0 +1,92 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+
+import com.mapbox.geojson.Point;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for OrienteeringPlanner
+ */
+public class OrienteeringPlannerTest
+    extends TestCase
+{
+    /**
+     * With more sensors than one flight can reach, some are left out, and the planned flight fits in App.maxMoves and ends back at the start
+     */
+    public void testFullMapFitsAndGetsBack()
+    {
+        var zones = NoFlyZones.of(MapFixtures.buildings());
+        var nodes = nodes(MapFixtures.spread("s", 150, 3));
+        var context = new PathContext(new EdgeIndex(zones), null);
+        var fullOrder = order(nodes);
+
+        var plan = planner(nodes, context).plan(fullOrder);
+        assertValid(plan, context);
+        assertTrue(plan.order.size() < fullOrder.size());
+        assertTrue(fullOrder.containsAll(plan.order));
+    }
+
+    /**
+     * When every sensor fits, none is dropped and the tour is flown as it was given
+     */
+    public void testNothingDroppedWhenEverythingFits()
+    {
+        var zones = NoFlyZones.of(MapFixtures.buildings());
+        var nodes = nodes(MapFixtures.spread("s", 12, 5));
+        var context = new PathContext(new EdgeIndex(zones), null);
+        var fullOrder = order(nodes);
+
+        var plan = planner(nodes, context).plan(fullOrder);
+        assertValid(plan, context);
+        assertEquals(fullOrder, plan.order);
+    }
+
+    //the legs chain from the start, every move misses the buildings, every leg ends within reach of its sensor, the last back at the start,
+    //and the whole flight fits in App.maxMoves
+    private static void assertValid(Replanner.Plan plan, PathContext context)
+    {
+        assertEquals(plan.order.size(), plan.legs.size());
+        assertEquals(Integer.valueOf(0), plan.order.get(0));
+        var at = Point.fromLngLat(plan.nodes.get(0).getLng(), plan.nodes.get(0).getLat());
+        int moves = 0;
+        for(int i = 0; i < plan.legs.size(); i++) {
+            var leg = plan.legs.get(i);
+            assertEquals(at, leg.getInstructions().get(0).getPreMove());
+            for(Instruction inst : leg.getInstructions()) {
+                assertTrue(context.edges.isValidMove(inst.getPreMove().longitude(), inst.getPreMove().latitude(),
+                        inst.getPostMove().longitude(), inst.getPostMove().latitude()));
+            }
+            moves += leg.getMoveCount();
+            at = leg.getActualEndPoint();
+            var target = plan.nodes.get(plan.order.get((i + 1) % plan.order.size()));
+            assertTrue(Math.hypot(at.longitude() - target.getLng(), at.latitude() - target.getLat()) < OrienteeringPlanner.reach);
+        }
+        assertTrue(moves <= App.maxMoves);
+    }
+
+    //the start node, then the sensors
+    private static ArrayList<SensorNode> nodes(ArrayList<SensorNode> sensors)
+    {
+        var nodes = new ArrayList<SensorNode>();
+        nodes.add(new SensorNode(null, 0, null, "#ffffff", "cross", -3.1878, 55.9444));
+        nodes.addAll(sensors);
+        return nodes;
+    }
+
+    //an insertion tour over every node, start node first
+    private static ArrayList<Integer> order(ArrayList<SensorNode> nodes)
+    {
+        var finder = new RouteFinder(nodes);
+        finder.tspInsertion();
+        finder.setStartNodeFirst();
+        return finder.getOrder();
+    }
+
+    private static OrienteeringPlanner planner(ArrayList<SensorNode> nodes, PathContext context)
+    {
+        TourOptimizer.Distances distances = (a, b) -> Math.hypot(nodes.get(a).getLng() - nodes.get(b).getLng(), nodes.get(a).getLat() - nodes.get(b).getLat());
+        return new OrienteeringPlanner(nodes, distances, context, Options.parse(new String[0], 0));
+    }
+}
@@ -0,0 +1,47 @@
+package uk.ac.ed.inf.aqmaps;
+
+import com.mapbox.geojson.Point;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for Path
+ */
+public class PathTest
+    extends TestCase
+{
+    //either side of the building in MapFixtures, so the straight line between them goes through it
+    private static final Point west = Point.fromLngLat(-3.1900, 55.94435);
+    private static final Point east = Point.fromLngLat(-3.1880, 55.94436);
+
+    /**
+     * The meet in the middle search plans the same leg round the building as A* does: moves that chain from the start,
+     * each clear of the buildings, ending within .0002 of the sensor
+     */
+    public void testBidirectionalMatchesAStar()
+    {
+        var edges = new EdgeIndex(NoFlyZones.of(MapFixtures.buildings()));
+        var astar = new Path(west, east, "acid.chair.butter", new PathContext(edges, null, PathContext.Search.astar, null, null));
+        var bidirectional = new Path(west, east, "acid.chair.butter", new PathContext(edges, null, PathContext.Search.bidirectional, null, null));
+        assertValid(astar, edges);
+        assertValid(bidirectional, edges);
+        assertTrue(bidirectional.getMoveCount() > (int) Math.ceil((east.longitude() - west.longitude() - .0002) / .0003)); //longer than the straight line, so it went round
+        assertTrue(bidirectional.getMoveCount() <= astar.getMoveCount() + 2);
+    }
+
+    //the moves chain from the start, each misses the buildings, and the last ends within .0002 of the sensor
+    static void assertValid(Path path, EdgeIndex edges)
+    {
+        var instructions = path.getInstructions();
+        assertFalse(instructions.isEmpty());
+        var at = west;
+        for(Instruction inst : instructions) {
+            assertEquals(at, inst.getPreMove());
+            assertTrue(edges.isValidMove(at.longitude(), at.latitude(), inst.getPostMove().longitude(), inst.getPostMove().latitude()));
+            at = inst.getPostMove();
+        }
+        assertEquals(at, path.getActualEndPoint());
+        assertTrue(Math.hypot(at.longitude() - east.longitude(), at.latitude() - east.latitude()) < .0002);
+        assertEquals("acid.chair.butter", instructions.get(instructions.size() - 1).getSensorLocation());
+    }
+}
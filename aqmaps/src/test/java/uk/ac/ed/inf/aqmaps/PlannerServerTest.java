@@ -0,0 +1,109 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for PlannerServer
+ */
+public class PlannerServerTest 
+    extends TestCase
+{
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /**
+     * With the only worker busy and no room in the queue, a request is turned away with 503 straight away,
+     * malformed requests get 400, and a failed sensor fetch 502
+     */
+    public void testBackpressureAndErrors() throws Exception
+    {
+        var fetching = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var web = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0); //a web server that has no sensors, slowly
+        web.createContext("/", exchange -> {
+            fetching.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        web.start();
+
+        var options = Options.parse(new String[] {"--workers=1", "--queue=0", "--words-cache=off"}, 0);
+        var buildings = new ArrayList<double[][]>();
+        buildings.add(new double[][] {{FileManager.minLon, FileManager.minLat}, {FileManager.maxLon, FileManager.minLat},
+            {FileManager.maxLon, FileManager.maxLat}, {FileManager.minLon, FileManager.maxLat}, {FileManager.minLon, FileManager.minLat}});
+        var zones = NoFlyZones.of(buildings);
+        var planner = new PlannerServer(Integer.toString(web.getAddress().getPort()), options, zones, new EdgeIndex(zones), null);
+        planner.start(0);
+        try {
+            var plan = "{\"date\": \"15-06-2021\", \"lat\": 55.9444, \"lng\": -3.1878, \"seed\": 5678}";
+            var first = client.sendAsync(post(planner, plan), HttpResponse.BodyHandlers.ofString());
+            assertTrue(fetching.await(10, TimeUnit.SECONDS)); //the worker is stuck fetching
+
+            var second = client.send(post(planner, plan), HttpResponse.BodyHandlers.ofString());
+            assertEquals(503, second.statusCode());
+            assertTrue(second.headers().firstValue("Retry-After").isPresent());
+
+            assertEquals(400, client.send(post(planner, "{\"date\": \"31-02-2021\"}"), HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(400, client.send(post(planner, "not json"), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            release.countDown();
+            assertEquals(502, first.get(10, TimeUnit.SECONDS).statusCode());
+        }
+        finally {
+            release.countDown();
+            planner.stop();
+            web.stop(0);
+        }
+    }
+
+    /**
+     * A replan needs the planId of a plan the server still keeps, 400 without one and 404 for one it does not know
+     */
+    public void testReplanNeedsAKeptPlan() throws Exception
+    {
+        var options = Options.parse(new String[] {"--words-cache=off"}, 0);
+        var buildings = new ArrayList<double[][]>();
+        buildings.add(new double[][] {{FileManager.minLon, FileManager.minLat}, {FileManager.maxLon, FileManager.minLat},
+            {FileManager.maxLon, FileManager.maxLat}, {FileManager.minLon, FileManager.maxLat}, {FileManager.minLon, FileManager.minLat}});
+        var zones = NoFlyZones.of(buildings);
+        var planner = new PlannerServer("0", options, zones, new EdgeIndex(zones), null);
+        planner.start(0);
+        try {
+            assertEquals(400, client.send(post(planner, "/replan", "{\"remove\": [\"a.b.c\"]}"), HttpResponse.BodyHandlers.ofString()).statusCode());
+            var unknown = client.send(post(planner, "/replan", "{\"planId\": \"no-such-plan\"}"), HttpResponse.BodyHandlers.ofString());
+            assertEquals(404, unknown.statusCode());
+            assertTrue(unknown.body().contains("no-such-plan"));
+        }
+        finally {
+            planner.stop();
+        }
+    }
+
+    private static HttpRequest post(PlannerServer planner, String body) {
+        return post(planner, "/plan", body);
+    }
+
+    private static HttpRequest post(PlannerServer planner, String path, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + planner.getPort() + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+}
@@ -0,0 +1,78 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ReadingsWriter and FlightPathWriter
+ */
+public class ReadingsWriterTest
+    extends TestCase
+{
+    /**
+     * The streamed GeoJSON is byte for byte what building a FeatureCollection and calling toJson gives
+     */
+    public void testMatchesFeatureCollection() throws IOException
+    {
+        var sensors = Arrays.asList(
+                new SensorNode("acid.chair.butter", 95, "41.2", "#80ff00", "lighthouse", -3.18582512345678, 55.9455191234),
+                new SensorNode("baked.cups.dims", 5, "null", "#000000", "cross", -3.0, 56.0),
+                new SensorNode("cold.dark.eyes", 100, null, "#aaaaaa", "no symbol", -3.1901, 55.943));
+        var line = Arrays.asList(Point.fromLngLat(-3.1878, 55.9444), Point.fromLngLat(-3.18750461, 55.94445213), Point.fromLngLat(-3.0, 56.0));
+
+        var features = new ArrayList<Feature>();
+        for(SensorNode node : sensors) {
+            var feature = Feature.fromGeometry(Point.fromLngLat(node.getLng(), node.getLat()));
+            if(node.getSymbol() != "no symbol") feature.addStringProperty("marker-symbol", node.getSymbol());
+            feature.addStringProperty("rgb-string", node.getColor());
+            feature.addStringProperty("marker-color", node.getColor());
+            features.add(feature);
+        }
+        features.add(Feature.fromGeometry(LineString.fromLngLats(line)));
+
+        var file = Files.createTempFile("readings", ".geojson");
+        try {
+            try(var readings = new ReadingsWriter(file.toString())) {
+                for(SensorNode node : sensors) readings.writeSensor(node);
+                readings.writeFlight(line);
+            }
+            assertEquals(FeatureCollection.fromFeatures(features).toJson(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Moves are numbered from 1, one line each
+     */
+    public void testFlightPathLines() throws IOException
+    {
+        var a = Point.fromLngLat(-3.1878, 55.9444);
+        var b = Point.fromLngLat(-3.1875, 55.9444);
+        var file = Files.createTempFile("flightpath", ".txt");
+        try {
+            try(var writer = new FlightPathWriter(file.toString())) {
+                writer.write(new Instruction(a, b, null));
+                writer.write(new Instruction(b, a, "acid.chair.butter"));
+            }
+            var lines = Files.readAllLines(file);
+            assertEquals(2, lines.size());
+            assertEquals("1,-3.1878,55.9444,0,-3.1875,55.9444,null", lines.get(0));
+            assertEquals("2,-3.1875,55.9444,180,-3.1878,55.9444,acid.chair.butter", lines.get(1));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.mapbox.geojson.Point;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for Replanner
+ */
+public class ReplannerTest
+    extends TestCase
+{
+    /**
+     * Dropping a sensor plans one leg where the two legs around it were, and keeps the legs well before it as they were
+     */
+    public void testDropSensorKeepsTheLegsBeforeIt()
+    {
+        var zones = NoFlyZones.of(MapFixtures.buildings());
+        var previous = plan(sensors(20), zones);
+        var context = new PathContext(new EdgeIndex(zones), null);
+        int dropAt = 14; //the sensor visited fourteenth
+        var dropped = previous.nodes.get(previous.order.get(dropAt));
+
+        var plan = Replanner.replan(previous, new ArrayList<SensorNode>(), Set.of(dropped.getLocation()), context, List.of());
+        assertValid(plan, context);
+        assertEquals(20, plan.order.size());
+        assertFalse(plan.nodes.contains(dropped));
+        int untouched = dropAt - 1 - Replanner.window - 1; //legs that end before the first position 2-opt may reverse
+        for(int i = 0; i < untouched; i++) assertSame(previous.legs.get(i), plan.legs.get(i));
+        assertTrue(plan.kept >= untouched);
+        assertTrue(plan.replanned >= 1);
+        assertEquals(plan.legs.size(), plan.kept + plan.shifted + plan.replanned);
+    }
+
+    /**
+     * An added sensor is visited, and most legs are reused rather than planned again
+     */
+    public void testAddSensorReusesMostLegs()
+    {
+        var zones = NoFlyZones.of(MapFixtures.buildings());
+        var previous = plan(sensors(20), zones);
+        var context = new PathContext(new EdgeIndex(zones), null);
+        var added = new SensorNode("added.new.sensor", 0, "0", null, null, -3.1869, 55.9431);
+
+        var plan = Replanner.replan(previous, List.of(added), new HashSet<String>(), context, List.of());
+        assertValid(plan, context);
+        assertEquals(22, plan.order.size());
+        assertTrue(plan.order.contains(plan.nodes.indexOf(added)));
+        assertTrue(plan.kept + plan.shifted > plan.replanned);
+    }
+
+    /**
+     * After a new building goes up, no leg flies through it, and the legs whose bounding boxes miss it are kept as they were
+     */
+    public void testNewBuildingOnlyReplansTheLegsItBlocks()
+    {
+        var buildings = MapFixtures.buildings();
+        var before = NoFlyZones.of(buildings);
+        var previous = plan(sensors(20), before);
+        var blocked = previous.legs.get(4).getInstructions().get(0).getPostMove(); //a building around the first move of one leg
+        double lng = blocked.longitude(), lat = blocked.latitude();
+        buildings.add(new double[][] {{lng - .0001, lat - .0001}, {lng + .0001, lat - .0001}, {lng + .0001, lat + .0001}, {lng - .0001, lat + .0001}, {lng - .0001, lat - .0001}});
+        var zones = NoFlyZones.of(buildings);
+        var context = new PathContext(new EdgeIndex(zones), null);
+
+        var plan = Replanner.replan(previous, new ArrayList<SensorNode>(), new HashSet<String>(), context, zones.changedSince(before));
+        assertValid(plan, context);
+        assertEquals(previous.order, plan.order);
+        assertNotSame(previous.legs.get(4), plan.legs.get(4));
+        int far = 0; //legs before the blocked one that stay clear of the new building, the rest start from where it now ends
+        for(int i = 0; i < 4; i++) {
+            if(near(previous.legs.get(i), lng, lat)) continue;
+            assertSame(previous.legs.get(i), plan.legs.get(i));
+            far++;
+        }
+        assertTrue(far > 0);
+        assertTrue(plan.kept >= far);
+        assertTrue(plan.replanned >= 1);
+        assertEquals(plan.legs.size(), plan.kept + plan.shifted + plan.replanned);
+    }
+
+    /**
+     * Sensors added to a flight that is nearly full are dropped again, some of them or others, until it fits in App.maxMoves and gets back to its start
+     */
+    public void testAddingToAFullFlightStillFits()
+    {
+        var zones = NoFlyZones.of(MapFixtures.buildings());
+        var context = new PathContext(new EdgeIndex(zones), null);
+        var nodes = sensors(0);
+        nodes.addAll(MapFixtures.spread("s", 60, 3));
+        var previous = plan(nodes, zones);
+        assertTrue(moves(previous) > App.maxMoves - 40);
+        assertTrue(moves(previous) <= App.maxMoves);
+
+        var plan = Replanner.replan(previous, MapFixtures.spread("a", 30, 11), new HashSet<String>(), context, List.of());
+        assertValid(plan, context); //ends within reach of the start
+        assertTrue(moves(plan) <= App.maxMoves);
+        assertTrue(plan.dropped > 0);
+        assertEquals(plan.legs.size(), plan.kept + plan.shifted + plan.replanned);
+    }
+
+    private static int moves(Replanner.Plan plan)
+    {
+        int total = 0;
+        for(Path leg : plan.legs) total += leg.getMoveCount();
+        return total;
+    }
+
+    //the legs chain start to end, every move misses the buildings and every leg ends within reach of its sensor
+    private static void assertValid(Replanner.Plan plan, PathContext context)
+    {
+        assertEquals(plan.order.size(), plan.legs.size());
+        assertEquals(Integer.valueOf(0), plan.order.get(0));
+        assertEquals(plan.order.size(), new HashSet<Integer>(plan.order).size());
+        assertEquals(plan.nodes.size() - plan.dropped, plan.order.size());
+        var at = Point.fromLngLat(plan.nodes.get(0).getLng(), plan.nodes.get(0).getLat());
+        for(int i = 0; i < plan.legs.size(); i++) {
+            var leg = plan.legs.get(i);
+            assertEquals(at, leg.getInstructions().get(0).getPreMove());
+            for(Instruction inst : leg.getInstructions()) {
+                assertTrue(context.edges.isValidMove(inst.getPreMove().longitude(), inst.getPreMove().latitude(),
+                        inst.getPostMove().longitude(), inst.getPostMove().latitude()));
+            }
+            at = leg.getActualEndPoint();
+            var target = plan.nodes.get(plan.order.get((i + 1) % plan.order.size()));
+            assertTrue(Math.hypot(at.longitude() - target.getLng(), at.latitude() - target.getLat()) < Replanner.reach);
+        }
+    }
+
+    //whether a move of the leg ends within a move length of the building around the point, so it may fly through it
+    private static boolean near(Path leg, double lng, double lat)
+    {
+        for(Instruction inst : leg.getInstructions()) {
+            for(Point point : new Point[] {inst.getPreMove(), inst.getPostMove()}) {
+                if(Math.abs(point.longitude() - lng) <= .0004 && Math.abs(point.latitude() - lat) <= .0004) return true;
+            }
+        }
+        return false;
+    }
+
+    //the start node, then n sensors spread over the confinement area
+    private static ArrayList<SensorNode> sensors(int n)
+    {
+        var random = new Random(5);
+        var nodes = new ArrayList<SensorNode>();
+        nodes.add(new SensorNode(null, 0, null, "#ffffff", "cross", -3.1878, 55.9444));
+        for(int i = 0; i < n; i++) {
+            nodes.add(new SensorNode("w" + i, 0, "0", null, null, -3.1920 + random.nextDouble() * .0072, 55.9431 + random.nextDouble() * .0027));
+        }
+        return nodes;
+    }
+
+    //plans the flight as App does, with the default options
+    private static Replanner.Plan plan(ArrayList<SensorNode> nodes, NoFlyZones zones)
+    {
+        return App.planDrone(nodes, zones, new EdgeIndex(zones), null, 5678, System.nanoTime(), Options.parse(new String[0], 0));
+    }
+}
@@ -0,0 +1,101 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for RouteFinder
+ */
+public class RouteFinderTest 
+    extends TestCase
+{
+    /**
+     * The incremental insertion gives exactly the order of checking every node against every edge on each insertion
+     */
+    public void testInsertionMatchesNaive()
+    {
+        var random = new Random(11);
+        for(int trial = 0; trial < 200; trial++) {
+            int n = 3 + random.nextInt(60);
+            boolean grid = trial % 2 == 0; //whole numbers on a small grid, so equal costs and repeated points happen
+            var nodes = new ArrayList<SensorNode>();
+            for(int i = 0; i < n; i++) {
+                double lng = grid ? random.nextInt(6) : random.nextDouble();
+                double lat = grid ? random.nextInt(6) : random.nextDouble();
+                nodes.add(new SensorNode("w" + i, 0, "0", null, null, lng, lat));
+            }
+
+            var finder = new RouteFinder(nodes);
+            var expected = naiveInsertion(finder.distances, new ArrayList<Integer>(finder.getOrder()));
+            finder.tspInsertion();
+            assertEquals(expected, finder.getOrder());
+        }
+    }
+
+    /**
+     * The sparse tour visits every node once, starts at the start node and ends up close to the tour from the full table
+     */
+    public void testSparseTourIsValid()
+    {
+        var random = new Random(3);
+        for(int trial = 0; trial < 20; trial++) {
+            int n = 3 + random.nextInt(400);
+            boolean grid = trial % 2 == 0;
+            var nodes = new ArrayList<SensorNode>();
+            for(int i = 0; i < n; i++) {
+                double lng = grid ? random.nextInt(10) : random.nextDouble();
+                double lat = grid ? random.nextInt(10) : random.nextDouble();
+                nodes.add(new SensorNode("w" + i, 0, "0", null, null, lng, lat));
+            }
+
+            var sparse = RouteFinder.sparse(nodes);
+            sparse.greedyTour();
+            sparse.localSearch();
+            sparse.setStartNodeFirst();
+            var order = sparse.getOrder();
+            assertEquals(n, order.size());
+            assertEquals(0, (int) order.get(0));
+            var seen = new boolean[n];
+            for(int node : order) {
+                assertFalse(seen[node]);
+                seen[node] = true;
+            }
+
+            var dense = new RouteFinder(nodes);
+            dense.tspInsertion();
+            dense.localSearch();
+            assertTrue(sparse.getTourLength() <= dense.getTourLength() * 1.2 + 1e-9);
+        }
+    }
+
+    /**
+     * Cheapest insertion as it was written before the incremental version
+     */
+    private static ArrayList<Integer> naiveInsertion(double[][] distances, ArrayList<Integer> optionList)
+    {
+        var finalList = new ArrayList<Integer>();
+        finalList.add(optionList.remove(0));
+        finalList.add(optionList.remove(0));
+        var minOpt = new int[] {0,0};
+        while(!optionList.isEmpty()) {
+            var minOptVal = Double.POSITIVE_INFINITY;
+            for(int i = 0; i < optionList.size(); i++) {
+                for(int j = 0; j < finalList.size(); j++) {
+                    var newVal = distances[optionList.get(i)][finalList.get(j)]
+                               + distances[optionList.get(i)][finalList.get((j + 1) % finalList.size())]
+                               - distances[finalList.get(j)][finalList.get((j + 1) % finalList.size())];
+                    if(newVal < minOptVal) {
+                        minOpt[0] = i;
+                        minOpt[1] = j;
+                        minOptVal = newVal;
+                    }
+                }
+            }
+            finalList.add(minOpt[1] + 1, optionList.get(minOpt[0]));
+            optionList.remove(minOpt[0]);
+        }
+        return finalList;
+    }
+}
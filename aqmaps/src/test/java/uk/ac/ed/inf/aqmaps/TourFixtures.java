@@ -0,0 +1,41 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Random;
+
+/**
+ * Distance tables and tour lengths shared by the tour optimizer tests
+ */
+final class TourFixtures
+{
+    private TourFixtures()
+    {
+    }
+
+    /**
+     * The distances between n random points in the unit square
+     */
+    static double[][] randomPlane(Random random, int n)
+    {
+        var x = new double[n];
+        var y = new double[n];
+        for(int i = 0; i < n; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+        }
+        var table = new double[n][n];
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) table[i][j] = Math.hypot(x[i] - x[j], y[i] - y[j]);
+        }
+        return table;
+    }
+
+    /**
+     * The length of the closed tour
+     */
+    static double length(double[][] table, int[] tour)
+    {
+        double total = 0;
+        for(int i = 0; i < tour.length; i++) total += table[tour[i]][tour[(i + 1) % tour.length]];
+        return total;
+    }
+}
@@ -0,0 +1,71 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for TourOptimizer
+ */
+public class TourOptimizerTest 
+    extends TestCase
+{
+    /**
+     * The optimized tour visits every node once and is never longer than the tour it started from
+     */
+    public void testTourStaysValidAndGetsNoLonger()
+    {
+        var random = new Random(7);
+        for(int trial = 0; trial < 50; trial++) {
+            int n = 5 + random.nextInt(120);
+            var table = TourFixtures.randomPlane(random, n);
+            var start = new int[n];
+            for(int i = 0; i < n; i++) start[i] = i;
+            for(int i = n - 1; i > 0; i--) { //shuffled starting tour
+                int j = random.nextInt(i + 1);
+                int swap = start[i];
+                start[i] = start[j];
+                start[j] = swap;
+            }
+
+            var optimizer = new TourOptimizer((a, b) -> table[a][b], TourOptimizer.nearestCandidates(table, TourOptimizer.defaultCandidates), start);
+            optimizer.optimize();
+            var tour = optimizer.getTour();
+
+            var seen = new boolean[n];
+            for(int node : tour) {
+                assertFalse(seen[node]);
+                seen[node] = true;
+            }
+            assertEquals(n, tour.length);
+            assertTrue(TourFixtures.length(table, tour) <= TourFixtures.length(table, start) + 1e-9);
+        }
+    }
+
+    /**
+     * Points on a circle given in a scrambled order come back as the circle
+     */
+    public void testUntanglesCircle()
+    {
+        int n = 40;
+        var x = new double[n];
+        var y = new double[n];
+        for(int i = 0; i < n; i++) {
+            x[i] = Math.cos(2 * Math.PI * i / n);
+            y[i] = Math.sin(2 * Math.PI * i / n);
+        }
+        var table = new double[n][n];
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) table[i][j] = Math.hypot(x[i] - x[j], y[i] - y[j]);
+        }
+        var start = new int[n];
+        for(int i = 0; i < n; i++) start[i] = (i * 7) % n; //7 and 40 share no factor, so every node appears once
+
+        var optimizer = new TourOptimizer((a, b) -> table[a][b], TourOptimizer.nearestCandidates(table, TourOptimizer.defaultCandidates), start);
+        optimizer.optimize();
+
+        var circle = new int[n];
+        for(int i = 0; i < n; i++) circle[i] = i;
+        assertEquals(TourFixtures.length(table, circle), TourFixtures.length(table, optimizer.getTour()), 1e-9);
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for WordsCache
+ */
+public class WordsCacheTest 
+    extends TestCase
+{
+    /**
+     * Locations put in one run are there in the next, and the hits and misses are counted
+     */
+    public void testLocationsSurviveReopening() throws IOException
+    {
+        var file = Files.createTempFile("words", ".bin");
+        try {
+            try(var cache = new WordsCache(file.toString())) {
+                assertNull(cache.get("acid.chair.butter"));
+                cache.put("acid.chair.butter", -3.1878, 55.9444);
+                cache.put("baked.cups.dims", -3.19, 55.943);
+                cache.put("acid.chair.butter", 0, 0); //already known, not written again
+            }
+            try(var cache = new WordsCache(file.toString())) {
+                assertEquals(2, cache.size());
+                var location = cache.get("acid.chair.butter");
+                assertEquals(-3.1878, location[0], 0);
+                assertEquals(55.9444, location[1], 0);
+                assertNull(cache.get("not.yet.seen"));
+                assertTrue(cache.summary().startsWith("W3W cache: 1 of 2 locations cached"));
+            }
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A record torn off by a crash is dropped and the file cut back, so later appends are read again
+     */
+    public void testTornRecordIsDropped() throws IOException
+    {
+        var file = Files.createTempFile("words", ".bin");
+        try {
+            try(var cache = new WordsCache(file.toString())) {
+                cache.put("first.whole.record", 1, 2);
+                cache.put("second.torn.record", 3, 4);
+            }
+            try(var raw = new RandomAccessFile(file.toFile(), "rw")) {
+                raw.setLength(raw.length() - 5);
+            }
+            try(var cache = new WordsCache(file.toString())) {
+                assertEquals(1, cache.size());
+                assertNull(cache.get("second.torn.record"));
+                cache.put("third.new.record", 5, 6);
+            }
+            try(var cache = new WordsCache(file.toString())) {
+                assertEquals(2, cache.size());
+                assertEquals(5, cache.get("third.new.record")[0], 0);
+            }
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}